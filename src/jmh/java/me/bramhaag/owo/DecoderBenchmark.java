@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of decoding pomf responses with the {@link Gson} instance created by {@link OwO#createGson(String)}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DecoderBenchmark {
+
+    @Param({"1", "10"})
+    public int files;
+
+    private String json;
+    private TypeAdapter<OwOFile> fileAdapter;
+    private TypeAdapter<List<OwOFile>> listAdapter;
+    private TypeAdapter<OwOFile> treeAdapter;
+
+    @Setup
+    public void setup() {
+        json = pomfResponse(files);
+
+        Gson gson = OwO.createGson("https://owo.whats-th.is/");
+        fileAdapter = gson.getAdapter(OwOFile.class);
+        listAdapter = gson.getAdapter(new TypeToken<List<OwOFile>>() {});
+
+        treeAdapter = new GsonBuilder().registerTypeAdapter(OwOFile.class, new JsonDeserializer<OwOFile>() {
+            @Override
+            public OwOFile deserialize(JsonElement json, Type type, JsonDeserializationContext context) throws JsonParseException {
+                return new Gson().fromJson(json.getAsJsonObject().get("files").getAsJsonArray().get(0), OwOFile.class).setFullUrl("https://owo.whats-th.is/");
+            }
+        }).create().getAdapter(OwOFile.class);
+    }
+
+    /**
+     * Tree based decoder which was used before {@link PomfTypeAdapter}, kept as baseline
+     */
+    @Benchmark
+    public OwOFile decodeFileTree() throws IOException {
+        return treeAdapter.fromJson(json);
+    }
+
+    @Benchmark
+    public OwOFile decodeFile() throws IOException {
+        return fileAdapter.fromJson(json);
+    }
+
+    @Benchmark
+    public List<OwOFile> decodeFiles() throws IOException {
+        return listAdapter.fromJson(json);
+    }
+
+    /**
+     * Create a pomf response as returned by the {@code /upload/pomf} endpoint
+     * @param files amount of files in response
+     * @return json
+     */
+    static String pomfResponse(int files) {
+        StringBuilder builder = new StringBuilder("{\"success\":true,\"files\":[");
+
+        for (int i = 0; i < files; i++) {
+            if(i > 0) {
+                builder.append(',');
+            }
+
+            builder.append("{\"hash\":\"2fd4e1c67a2d28fced849ee1bb76e7391b93eb12\",\"name\":\"screenshot-").append(i)
+                    .append(".png\",\"url\":\"abcdef").append(i).append(".png\",\"size\":").append(1024 * (i + 1)).append('}');
+        }
+
+        return builder.append("]}").toString();
+    }
+}
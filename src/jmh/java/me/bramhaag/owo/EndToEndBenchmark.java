@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads and shortens through the whole client against an in-process {@link MockWebServer}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class EndToEndBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        MockWebServer server;
+        OwO owo;
+
+        @Setup
+        public void setup() throws IOException {
+            final String upload = DecoderBenchmark.pomfResponse(1);
+
+            server = new MockWebServer();
+            server.setBodyLimit(0);
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    if(request.getPath().startsWith("/upload/pomf")) {
+                        return new MockResponse().setBody(upload);
+                    }
+
+                    return new MockResponse().setBody("https://awau.moe/abc");
+                }
+            });
+            server.start();
+
+            owo = new OwO.Builder().setKey("benchmark").setEndpoint(server.url("/").toString()).build();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            server.shutdown();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Payload {
+
+        @Param({"1024", "1048576", "104857600", "1073741824"})
+        public int size;
+
+        byte[] data;
+
+        @Setup
+        public void setup() {
+            data = new byte[size];
+            new Random(size).nextBytes(data);
+        }
+    }
+
+    @Benchmark
+    public OwOFile upload(Server server, Payload payload) throws Throwable {
+        return server.owo.upload(payload.data, "file.bin", "application/octet-stream").executeSync();
+    }
+
+    @Benchmark
+    public String shorten(Server server) throws Throwable {
+        return server.owo.shorten("https://example.com/").executeSync();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link OwO.KeyInterceptor} rewriting a request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InterceptorBenchmark {
+
+    private Interceptor interceptor;
+    private Interceptor.Chain chain;
+
+    @Setup
+    public void setup() {
+        interceptor = new OwO.KeyInterceptor("0123456789abcdef0123456789abcdef");
+
+        final Request request = new Request.Builder().url("https://api.awau.moe/shorten/polr?action=shorten&url=https%3A%2F%2Fexample.com%2F&resultUrl=https%3A%2F%2Fawau.moe").build();
+        chain = new Interceptor.Chain() {
+            @Override
+            public Request request() {
+                return request;
+            }
+
+            @Override
+            public Response proceed(Request request) throws IOException {
+                return new Response.Builder()
+                        .request(request)
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(MediaType.parse("text/plain"), "https://awau.moe/abc"))
+                        .build();
+            }
+
+            @Override
+            public Connection connection() {
+                return null;
+            }
+
+            @Override
+            public Call call() {
+                return null;
+            }
+
+            @Override
+            public int connectTimeoutMillis() {
+                return 0;
+            }
+
+            @Override
+            public Interceptor.Chain withConnectTimeout(int timeout, TimeUnit unit) {
+                return this;
+            }
+
+            @Override
+            public int readTimeoutMillis() {
+                return 0;
+            }
+
+            @Override
+            public Interceptor.Chain withReadTimeout(int timeout, TimeUnit unit) {
+                return this;
+            }
+
+            @Override
+            public int writeTimeoutMillis() {
+                return 0;
+            }
+
+            @Override
+            public Interceptor.Chain withWriteTimeout(int timeout, TimeUnit unit) {
+                return this;
+            }
+        };
+    }
+
+    @Benchmark
+    public Response intercept() throws IOException {
+        return interceptor.intercept(chain);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator which runs concurrent clients through {@link OwO} against a {@link FakeOwOServer} and reports
+ * throughput, latency percentiles, heap usage, garbage collection and allocation per operation.
+ *
+ * Options are passed as {@code --name=value}, see {@link LoadGenerator#USAGE}.
+ */
+public class LoadGenerator {
+
+    @NotNull private static final String USAGE = String.join("\n",
+            "options:",
+            "  --clients=8          concurrent clients",
+            "  --duration=30        measured seconds",
+            "  --warmup=5           seconds before measuring",
+            "  --size=65536         bytes per upload",
+            "  --shorten=0.2        fraction of operations which shorten a URL instead of uploading",
+            "  --latency=0          server latency in milliseconds",
+            "  --jitter=0           server latency jitter in milliseconds",
+            "  --errors=0           fraction of requests failing with 500",
+            "  --throttles=0        fraction of requests failing with 429",
+            "  --disconnects=0      fraction of requests whose connection is dropped",
+            "  --rps=0              server request rate cap, 0 for none",
+            "  --bps=0              server upload byte rate cap, 0 for none",
+            "  --retry=false        retry failed requests with the default OwORetryPolicy");
+
+    private int clients = 8;
+    private long durationNanos = TimeUnit.SECONDS.toNanos(30);
+    private long warmupNanos = TimeUnit.SECONDS.toNanos(5);
+    private int size = 65536;
+    private double shortenRatio = 0.2;
+    private boolean retry;
+
+    @NotNull private final FakeOwOServer.Builder server = new FakeOwOServer.Builder();
+
+    private long latency;
+    private long jitter;
+    private double errors;
+    private double throttles;
+    private double disconnects;
+
+    @NotNull private final OwOHistogram histogram = new OwOHistogram();
+    @NotNull private final LongAdder uploads = new LongAdder();
+    @NotNull private final LongAdder shortens = new LongAdder();
+    @NotNull private final LongAdder allocated = new LongAdder();
+    @NotNull private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+    private volatile boolean measuring;
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if(!arg.startsWith("--") || index < 0 || !generator.set(arg.substring(2, index), arg.substring(index + 1))) {
+                System.err.println("unknown option " + arg + "\n" + USAGE);
+                System.exit(2);
+            }
+        }
+
+        generator.run();
+    }
+
+    private boolean set(@NotNull String name, @NotNull String value) {
+        switch (name) {
+            case "clients":     clients = Integer.parseInt(value); break;
+            case "duration":    durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(value)); break;
+            case "warmup":      warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(value)); break;
+            case "size":        size = Integer.parseInt(value); break;
+            case "shorten":     shortenRatio = Double.parseDouble(value); break;
+            case "latency":     latency = Long.parseLong(value); break;
+            case "jitter":      jitter = Long.parseLong(value); break;
+            case "errors":      errors = Double.parseDouble(value); break;
+            case "throttles":   throttles = Double.parseDouble(value); break;
+            case "disconnects": disconnects = Double.parseDouble(value); break;
+            case "rps":         server.setMaxRequestsPerSecond(Double.parseDouble(value)); break;
+            case "bps":         server.setMaxBytesPerSecond(Long.parseLong(value)); break;
+            case "retry":       retry = Boolean.parseBoolean(value); break;
+            default:            return false;
+        }
+
+        return true;
+    }
+
+    private void run() throws Exception {
+        server.setLatency(latency, jitter, TimeUnit.MILLISECONDS).setFailures(errors, throttles, disconnects);
+
+        try (FakeOwOServer fake = server.start()) {
+            OwO.Builder builder = new OwO.Builder().setKey("load").setEndpoint(fake.getEndpoint());
+            if(retry) {
+                builder.setRetryPolicy(new OwORetryPolicy.Builder().build());
+            }
+
+            OwO owo = builder.build();
+            byte[] payload = new byte[size];
+            new Random(size).nextBytes(payload);
+
+            CountDownLatch done = new CountDownLatch(clients);
+            long start = System.nanoTime();
+            long measureFrom = start + warmupNanos;
+            long measureUntil = measureFrom + durationNanos;
+
+            for (int i = 0; i < clients; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        client(owo, payload, measureFrom, measureUntil);
+                    } finally {
+                        done.countDown();
+                    }
+                }, "OwO load client " + i);
+
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, measureFrom - System.nanoTime()));
+
+            List<MemoryPoolMXBean> heap = new ArrayList<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if(pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                    heap.add(pool);
+                }
+            }
+
+            long[] gc = gc();
+            measuring = true;
+
+            done.await();
+            long elapsed = System.nanoTime() - measureFrom;
+            long[] gcAfter = gc();
+
+            long peak = 0;
+            for (MemoryPoolMXBean pool : heap) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+
+            report(fake, elapsed, peak, gcAfter[0] - gc[0], gcAfter[1] - gc[1]);
+        }
+    }
+
+    private void client(@NotNull OwO owo, @NotNull byte[] payload, long measureFrom, long measureUntil) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedFrom = -1;
+
+        for (long now = System.nanoTime(); now - measureUntil < 0; now = System.nanoTime()) {
+            boolean measured = now - measureFrom >= 0;
+            if(measured && allocatedFrom < 0) {
+                allocatedFrom = allocatedBytes(threads);
+            }
+
+            boolean shorten = ThreadLocalRandom.current().nextDouble() < shortenRatio;
+
+            try {
+                if(shorten) {
+                    owo.shorten("https://example.com/" + now).executeSync();
+                } else {
+                    owo.upload(payload, "load.bin", "application/octet-stream").executeSync();
+                }
+            } catch (Throwable t) {
+                if(measured) {
+                    failures.computeIfAbsent(t.getClass().getSimpleName() + ": " + t.getMessage(), key -> new LongAdder()).increment();
+                }
+
+                continue;
+            }
+
+            if(measured) {
+                histogram.record(System.nanoTime() - now);
+                (shorten ? shortens : uploads).increment();
+            }
+        }
+
+        if(allocatedFrom >= 0) {
+            allocated.add(allocatedBytes(threads) - allocatedFrom);
+        }
+    }
+
+    private void report(@NotNull FakeOwOServer fake, long elapsedNanos, long peakHeap, long collections, long collectionMillis) {
+        double seconds = elapsedNanos / 1e9;
+        long operations = uploads.sum() + shortens.sum();
+        long failed = 0;
+        for (LongAdder count : failures.values()) {
+            failed += count.sum();
+        }
+
+        System.out.printf("clients    %d, %.1f s measured after %d s warmup, %d byte uploads, %.0f%% shortens%n",
+                clients, seconds, TimeUnit.NANOSECONDS.toSeconds(warmupNanos), size, shortenRatio * 100);
+        System.out.printf("operations %d succeeded (%.1f ops/s), %d uploads, %d shortens, %d failed%n",
+                operations, operations / seconds, uploads.sum(), shortens.sum(), failed);
+        System.out.printf("throughput %.2f MiB/s uploaded%n", uploads.sum() * (double) size / seconds / (1 << 20));
+        System.out.printf("latency    p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMax()));
+        System.out.printf("heap       peak %.1f MiB, %d collections taking %d ms%n", peakHeap / (double) (1 << 20), collections, collectionMillis);
+
+        if(allocated.sum() > 0 && operations + failed > 0) {
+            System.out.printf("allocated  %.1f KiB per operation on client threads%n", allocated.sum() / 1024.0 / (operations + failed));
+        }
+
+        System.out.printf("server     %d uploads, %d shortens, %d injected failures, %d throttled by rate cap%n",
+                fake.getUploads(), fake.getShortens(), fake.getInjected(), fake.getThrottled());
+
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(failures).entrySet()) {
+            System.out.printf("failure    %dx %s%n", entry.getValue().sum(), entry.getKey());
+        }
+    }
+
+    @NotNull
+    private static String millis(long nanos) {
+        return String.format("%.2f ms", nanos / 1e6);
+    }
+
+    /**
+     * @return total amount of collections and time spent collecting in milliseconds
+     */
+    @NotNull
+    private static long[] gc() {
+        long[] result = new long[2];
+
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result[0] += Math.max(0, collector.getCollectionCount());
+            result[1] += Math.max(0, collector.getCollectionTime());
+        }
+
+        return result;
+    }
+
+    private static long allocatedBytes(@NotNull ThreadMXBean threads) {
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the multipart request of {@link OwO#upload(byte[], String, String)} and
+ * {@link OwO#upload(java.nio.ByteBuffer, String, String)} and writing its body
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class MultipartBenchmark {
+
+    @Param({"1024", "1048576", "104857600", "1073741824"})
+    public int size;
+
+    private OwO owo;
+    private byte[] data;
+    private ByteBuffer direct;
+
+    @Setup
+    public void setup() {
+        owo = new OwO.Builder().setKey("benchmark").setEndpoint("http://localhost/").build();
+        data = new byte[size];
+        new Random(size).nextBytes(data);
+
+        direct = ByteBuffer.allocateDirect(size);
+        direct.put(data).flip();
+    }
+
+    @Benchmark
+    public Object createRequest() {
+        return owo.upload(data, "file.bin", "application/octet-stream").getCall().request();
+    }
+
+    @Benchmark
+    public long writeBody() throws IOException {
+        RequestBody body = owo.upload(data, "file.bin", "application/octet-stream").getCall().request().body();
+
+        try (BufferedSink sink = Okio.buffer(Okio.blackhole())) {
+            body.writeTo(sink);
+            return body.contentLength();
+        }
+    }
+
+    @Benchmark
+    public long writeDirectBody() throws IOException {
+        RequestBody body = owo.upload(direct, "file.bin", "application/octet-stream").getCall().request().body();
+
+        try (BufferedSink sink = Okio.buffer(Okio.blackhole())) {
+            body.writeTo(sink);
+            return body.contentLength();
+        }
+    }
+}
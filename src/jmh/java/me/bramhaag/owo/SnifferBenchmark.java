@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link ContentSniffer} compared to {@link URLConnection#guessContentTypeFromStream(java.io.InputStream)}
+ * on the first {@link ContentSniffer#PREFIX_LENGTH} bytes of common formats
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnifferBenchmark {
+
+    @Param({"png", "mp4", "zip", "text", "binary"})
+    public String format;
+
+    private byte[] prefix;
+
+    @Setup
+    public void setup() {
+        prefix = new byte[ContentSniffer.PREFIX_LENGTH];
+        new Random(0).nextBytes(prefix);
+
+        byte[] header;
+        switch (format) {
+            case "png":
+                header = new byte[] { (byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A };
+                break;
+            case "mp4":
+                header = new byte[] { 0x00, 0x00, 0x00, 0x20, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm' };
+                break;
+            case "zip":
+                header = new byte[] { 'P', 'K', 0x03, 0x04 };
+                break;
+            case "text":
+                char[] text = new char[prefix.length];
+                Arrays.fill(text, 'a');
+                header = new String(text).replace("aaaaaaa", "lorem \n").getBytes(StandardCharsets.UTF_8);
+                break;
+            default:
+                header = new byte[] { 0x00, 0x01, 0x02 };
+        }
+
+        System.arraycopy(header, 0, prefix, 0, header.length);
+    }
+
+    @Benchmark
+    public String sniff() {
+        return ContentSniffer.guess(null, prefix, prefix.length);
+    }
+
+    @Benchmark
+    public String urlConnection() throws IOException {
+        return URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(prefix));
+    }
+}
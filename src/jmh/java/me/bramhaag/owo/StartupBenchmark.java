@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from creating an {@link OwO} to the result of its first upload in a fresh JVM, with the Retrofit service
+ * and with {@link OwO.Builder#setFastStart(boolean)}. Every fork measures a single cold call, the response is answered
+ * by an interceptor so only client side work is measured. Run with {@code -prof cl} to also see the amount of loaded classes.
+ *
+ * The {@link OkHttpClient} is created before measuring, its TLS setup takes longer than everything else and is the same for both
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+    private OwOTransport transport;
+
+    @Setup
+    public void setup() {
+        // no lambda, so the benchmark itself does not bootstrap java.lang.invoke
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(MediaType.parse("application/json"), DecoderBenchmark.pomfResponse(1)))
+                        .build();
+            }
+        }).build();
+
+        transport = new OwOTransport(client);
+    }
+
+    @Benchmark
+    public OwOFile retrofit() throws Throwable {
+        return upload(false);
+    }
+
+    @Benchmark
+    public OwOFile fastStart() throws Throwable {
+        return upload(true);
+    }
+
+    private OwOFile upload(boolean fastStart) throws Throwable {
+        OwO owo = new OwO.Builder()
+                .setKey("benchmark")
+                .setTransport(transport)
+                .setFastStart(fastStart)
+                .build();
+
+        return owo.upload(new byte[] { 1, 2, 3 }, "file.bin", "application/octet-stream").executeSync();
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Content type detection from the first {@link ContentSniffer#PREFIX_LENGTH} bytes of the content.
+ *
+ * Binary signatures are looked up in a table indexed by the first byte, so only the few signatures sharing that byte
+ * are compared. Signatures at a later offset are compared before that table, they are more specific than the short
+ * first-byte signatures they can collide with: an MP4 whose {@code ftyp} box is 256 bytes long starts like an icon. Content without a known signature is checked for markup and for valid UTF-8 text. The file name is
+ * only used when the bytes do not tell more than "text".
+ */
+final class ContentSniffer {
+
+    /**
+     * Amount of bytes needed from the start of the content
+     */
+    static final int PREFIX_LENGTH = 512;
+
+    private static final String TEXT = "text/plain; charset=utf-8";
+
+    private static final Signature[][] TABLE = new Signature[256][];
+    private static final Signature[] OFFSET_SIGNATURES;
+
+    static {
+        List<Signature> offsetSignatures = new ArrayList<>();
+        List<List<Signature>> table = new ArrayList<>(256);
+        for (int i = 0; i < 256; i++) {
+            table.add(new ArrayList<>());
+        }
+
+        for (Signature signature : new Signature[] {
+                // images
+                new Signature("image/png", 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A),
+                new Signature("image/jpeg", 0, 0xFF, 0xD8, 0xFF),
+                new Signature("image/gif", 0, "GIF87a"),
+                new Signature("image/gif", 0, "GIF89a"),
+                new Signature("image/webp", 0, "RIFF").and(8, "WEBP"),
+                new Signature("image/tiff", 0, 'I', 'I', '*', 0x00),
+                new Signature("image/tiff", 0, 'M', 'M', 0x00, '*'),
+                new Signature("image/vnd.microsoft.icon", 0, 0x00, 0x00, 0x01, 0x00),
+                new Signature("image/vnd.adobe.photoshop", 0, "8BPS"),
+                new Signature("image/jxl", 0, 0xFF, 0x0A),
+                new Signature("image/bmp", 0, "BM").and(6, 0x00, 0x00, 0x00, 0x00),
+                new Signature("image/avif", 4, "ftypavif"),
+                new Signature("image/heic", 4, "ftypheic"),
+                new Signature("image/heic", 4, "ftypheix"),
+                new Signature("image/heif", 4, "ftypmif1"),
+
+                // video
+                new Signature("video/quicktime", 4, "ftypqt  "),
+                new Signature("video/3gpp", 4, "ftyp3gp"),
+                new Signature("audio/mp4", 4, "ftypM4A "),
+                new Signature("video/mp4", 4, "ftyp"),
+                new Signature("video/webm", 0, 0x1A, 0x45, 0xDF, 0xA3),
+                new Signature("video/x-msvideo", 0, "RIFF").and(8, "AVI "),
+                new Signature("video/x-flv", 0, "FLV", 0x01),
+                new Signature("video/mpeg", 0, 0x00, 0x00, 0x01, 0xBA),
+                new Signature("video/mpeg", 0, 0x00, 0x00, 0x01, 0xB3),
+                new Signature("video/mp2t", 0, 0x47).and(188, 0x47).and(376, 0x47),
+
+                // audio
+                new Signature("audio/mpeg", 0, "ID3"),
+                new Signature("audio/mpeg", 0, 0xFF, 0xFB),
+                new Signature("audio/mpeg", 0, 0xFF, 0xF3),
+                new Signature("audio/mpeg", 0, 0xFF, 0xF2),
+                new Signature("audio/aac", 0, 0xFF, 0xF1),
+                new Signature("audio/aac", 0, 0xFF, 0xF9),
+                new Signature("audio/ogg", 0, "OggS"),
+                new Signature("audio/flac", 0, "fLaC"),
+                new Signature("audio/wav", 0, "RIFF").and(8, "WAVE"),
+                new Signature("audio/aiff", 0, "FORM").and(8, "AIFF"),
+                new Signature("audio/midi", 0, "MThd"),
+
+                // archives
+                new Signature("application/zip", 0, 'P', 'K', 0x03, 0x04),
+                new Signature("application/zip", 0, 'P', 'K', 0x05, 0x06),
+                new Signature("application/gzip", 0, 0x1F, 0x8B),
+                new Signature("application/x-bzip2", 0, "BZh"),
+                new Signature("application/x-xz", 0, 0xFD, '7', 'z', 'X', 'Z', 0x00),
+                new Signature("application/x-7z-compressed", 0, '7', 'z', 0xBC, 0xAF, 0x27, 0x1C),
+                new Signature("application/vnd.rar", 0, "Rar!", 0x1A, 0x07),
+                new Signature("application/zstd", 0, 0x28, 0xB5, 0x2F, 0xFD),
+                new Signature("application/x-tar", 257, "ustar"),
+
+                // documents and other binary formats
+                new Signature("application/pdf", 0, "%PDF-"),
+                new Signature("application/postscript", 0, "%!PS"),
+                new Signature("application/rtf", 0, "{\\rtf"),
+                new Signature("application/vnd.ms-office", 0, 0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1),
+                new Signature("application/vnd.sqlite3", 0, "SQLite format 3", 0x00),
+                new Signature("application/wasm", 0, 0x00, 'a', 's', 'm'),
+                new Signature("application/java-vm", 0, 0xCA, 0xFE, 0xBA, 0xBE),
+                new Signature("font/woff", 0, "wOFF"),
+                new Signature("font/woff2", 0, "wOF2"),
+                new Signature("font/otf", 0, "OTTO"),
+                new Signature("font/ttf", 0, 0x00, 0x01, 0x00, 0x00, 0x00),
+
+                // byte order marks
+                new Signature(TEXT, 0, 0xEF, 0xBB, 0xBF),
+                new Signature("text/plain; charset=utf-16be", 0, 0xFE, 0xFF),
+                new Signature("text/plain; charset=utf-16le", 0, 0xFF, 0xFE),
+        }) {
+            if(signature.offset == 0) {
+                table.get(signature.pattern[0] & 0xFF).add(signature);
+            } else {
+                offsetSignatures.add(signature);
+            }
+        }
+
+        for (int i = 0; i < 256; i++) {
+            TABLE[i] = table.get(i).isEmpty() ? null : table.get(i).toArray(new Signature[0]);
+        }
+
+        OFFSET_SIGNATURES = offsetSignatures.toArray(new Signature[0]);
+    }
+
+    private ContentSniffer() {
+    }
+
+    /**
+     * Guess the content type of content from its first bytes
+     * @param prefix buffer holding the start of the content
+     * @param length amount of bytes in {@code prefix}, at most {@link ContentSniffer#PREFIX_LENGTH} are used
+     * @return content type, {@code text/plain; charset=utf-8} for unrecognized text, or {@code null} if it is not recognized
+     */
+    @Nullable
+    static String sniff(@NotNull byte[] prefix, int length) {
+        length = Math.min(length, Math.min(prefix.length, PREFIX_LENGTH));
+        if(length == 0) {
+            return null;
+        }
+
+        for (Signature signature : OFFSET_SIGNATURES) {
+            if(signature.matches(prefix, length)) {
+                return signature.contentType;
+            }
+        }
+
+        Signature[] candidates = TABLE[prefix[0] & 0xFF];
+        if(candidates != null) {
+            for (Signature signature : candidates) {
+                if(signature.matches(prefix, length)) {
+                    return signature.contentType;
+                }
+            }
+        }
+
+        String markup = sniffMarkup(prefix, length);
+        if(markup != null) {
+            return markup;
+        }
+
+        return isText(prefix, length) ? TEXT : null;
+    }
+
+    /**
+     * Guess the content type of content from its first bytes and its name
+     * @param fileName name of the content, or {@code null}
+     * @param prefix buffer holding the start of the content
+     * @param length amount of bytes in {@code prefix}
+     * @return content type, {@link OwO#DEFAULT_CONTENT_TYPE} if it is not recognized
+     */
+    @NotNull
+    static String guess(@Nullable String fileName, @NotNull byte[] prefix, int length) {
+        String sniffed = sniff(prefix, length);
+
+        if(sniffed == null || sniffed.equals(TEXT)) {
+            String named = fileName == null ? null : URLConnection.guessContentTypeFromName(fileName);
+            if(named != null) {
+                return named;
+            }
+        }
+
+        return sniffed == null ? OwO.DEFAULT_CONTENT_TYPE : sniffed;
+    }
+
+    /**
+     * Guess the content type of a file from its first bytes and its name
+     * @param file file to read
+     * @return content type, {@link OwO#DEFAULT_CONTENT_TYPE} if it is not recognized
+     *
+     * @throws IOException if {@code file} cannot be read
+     */
+    @NotNull
+    static String guess(@NotNull File file) throws IOException {
+        try (InputStream stream = new FileInputStream(file)) {
+            byte[] prefix = new byte[PREFIX_LENGTH];
+            return guess(file.getName(), prefix, read(stream, prefix));
+        }
+    }
+
+    /**
+     * Guess the content type of a stream, which is reset to where it was afterwards
+     * @param fileName name of the content, or {@code null}
+     * @param stream stream supporting {@link InputStream#mark(int)}, such as a {@link BufferedInputStream}
+     * @return content type, {@link OwO#DEFAULT_CONTENT_TYPE} if it is not recognized
+     *
+     * @throws IOException if {@code stream} cannot be read
+     */
+    @NotNull
+    static String guess(@Nullable String fileName, @NotNull InputStream stream) throws IOException {
+        byte[] prefix = new byte[PREFIX_LENGTH];
+
+        stream.mark(PREFIX_LENGTH);
+        try {
+            return guess(fileName, prefix, read(stream, prefix));
+        } finally {
+            stream.reset();
+        }
+    }
+
+    private static int read(@NotNull InputStream stream, @NotNull byte[] buffer) throws IOException {
+        int length = 0;
+        int read;
+
+        while (length < buffer.length && (read = stream.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+        }
+
+        return length;
+    }
+
+    @Nullable
+    private static String sniffMarkup(@NotNull byte[] prefix, int length) {
+        int start = 0;
+        while (start < length && isWhitespace(prefix[start])) {
+            start++;
+        }
+
+        if(start == length || prefix[start] != '<') {
+            return null;
+        }
+
+        String head = new String(prefix, start, Math.min(length - start, 64), StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+        if(head.startsWith("<!doctype html") || head.startsWith("<html") || head.startsWith("<head") || head.startsWith("<body")) {
+            return "text/html; charset=utf-8";
+        }
+
+        if(head.startsWith("<svg")) {
+            return "image/svg+xml";
+        }
+
+        if(head.startsWith("<?xml")) {
+            String rest = new String(prefix, start, length - start, StandardCharsets.ISO_8859_1);
+            return rest.contains("<svg") ? "image/svg+xml" : "application/xml";
+        }
+
+        return null;
+    }
+
+    /**
+     * Check whether bytes are UTF-8 text without control characters other than whitespace.
+     * A multi-byte sequence cut off at the end of the prefix is allowed
+     */
+    private static boolean isText(@NotNull byte[] prefix, int length) {
+        for (int i = 0; i < length; ) {
+            int b = prefix[i] & 0xFF;
+
+            if(b < 0x80) {
+                if(b < 0x20 && !isWhitespace(prefix[i]) && b != 0x1B) {
+                    return false;
+                }
+
+                i++;
+                continue;
+            }
+
+            int continuation;
+            if(b >= 0xC2 && b <= 0xDF) {
+                continuation = 1;
+            } else if(b >= 0xE0 && b <= 0xEF) {
+                continuation = 2;
+            } else if(b >= 0xF0 && b <= 0xF4) {
+                continuation = 3;
+            } else {
+                return false;
+            }
+
+            for (int j = 1; j <= continuation; j++) {
+                if(i + j == length) {
+                    return true;
+                }
+
+                if((prefix[i + j] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+
+            i += continuation + 1;
+        }
+
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    /**
+     * Bytes at a fixed offset, optionally followed by more bytes at another offset
+     */
+    private static class Signature {
+
+        @NotNull final String contentType;
+        final int offset;
+        @NotNull final byte[] pattern;
+        @Nullable Signature next;
+
+        Signature(@NotNull String contentType, int offset, @NotNull Object... parts) {
+            this.contentType = contentType;
+            this.offset = offset;
+            this.pattern = bytes(parts);
+        }
+
+        /**
+         * @return this signature, which now also requires {@code parts} at {@code offset}
+         */
+        @NotNull
+        Signature and(int offset, @NotNull Object... parts) {
+            Signature last = this;
+            while (last.next != null) {
+                last = last.next;
+            }
+
+            last.next = new Signature(contentType, offset, parts);
+            return this;
+        }
+
+        boolean matches(@NotNull byte[] prefix, int length) {
+            for (Signature signature = this; signature != null; signature = signature.next) {
+                if(signature.offset + signature.pattern.length > length) {
+                    return false;
+                }
+
+                for (int i = 0; i < signature.pattern.length; i++) {
+                    if(prefix[signature.offset + i] != signature.pattern[i]) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        @NotNull
+        private static byte[] bytes(@NotNull Object... parts) {
+            byte[] bytes = new byte[0];
+
+            for (Object part : parts) {
+                byte[] next = part instanceof String
+                        ? ((String) part).getBytes(StandardCharsets.ISO_8859_1)
+                        : new byte[] { (byte) (part instanceof Character ? (char) (Character) part : (int) (Integer) part) };
+
+                bytes = Arrays.copyOf(bytes, bytes.length + next.length);
+                System.arraycopy(next, 0, bytes, bytes.length - next.length, next.length);
+            }
+
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.Request;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link Call} which spreads a bulk operation over several underlying calls, running at most {@code maxConcurrency}
+ * of them at once and, optionally, at most {@code maxWeight} of their combined weight (for example bytes).
+ * Every item ends up with its own {@link OwOResult}, so a failing call only fails the items it carried.
+ *
+ * @param <T> type of value of a single item
+ */
+class FanOutCall<T> implements Call<List<OwOResult<T>>> {
+
+    @NotNull private static final Request REQUEST = new Request.Builder().url("http://localhost/").build();
+
+    private final int size;
+    private final int maxConcurrency;
+    private final long maxWeight;
+    @NotNull private final List<Branch<?, T>> branches;
+
+    private boolean slowStart;
+    private boolean executed;
+    private volatile boolean canceled;
+
+    /**
+     * @param size amount of items
+     * @param maxConcurrency maximum amount of branches running at once
+     * @param branches branches which together cover every item
+     */
+    FanOutCall(int size, int maxConcurrency, @NotNull List<Branch<?, T>> branches) {
+        this(size, maxConcurrency, Long.MAX_VALUE, branches);
+    }
+
+    /**
+     * @param size amount of items
+     * @param maxConcurrency maximum amount of branches running at once
+     * @param maxWeight maximum combined weight of running branches, a heavier branch still runs when nothing else is running
+     * @param branches branches which together cover every item
+     */
+    FanOutCall(int size, int maxConcurrency, long maxWeight, @NotNull List<Branch<?, T>> branches) {
+        this.size = size;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxWeight = maxWeight;
+        this.branches = branches;
+    }
+
+    /**
+     * Run a single branch until the first one completes, so calls to the same host find its connection in the pool
+     * and share it over HTTP/2 instead of each opening their own
+     * @return this call
+     */
+    @NotNull
+    FanOutCall<T> slowStart() {
+        this.slowStart = true;
+        return this;
+    }
+
+    @Override
+    public Response<List<OwOResult<T>>> execute() throws IOException {
+        markExecuted();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Run run = new Run() {
+            @Override
+            void done() {
+                latch.countDown();
+            }
+        };
+
+        run.start();
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for bulk operation");
+        }
+
+        return Response.success(run.results());
+    }
+
+    @Override
+    public void enqueue(@NotNull final Callback<List<OwOResult<T>>> callback) {
+        markExecuted();
+
+        new Run() {
+            @Override
+            void done() {
+                callback.onResponse(FanOutCall.this, Response.success(results()));
+            }
+        }.start();
+    }
+
+    @Override
+    public synchronized boolean isExecuted() {
+        return executed;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+
+        for (Branch<?, T> branch : branches) {
+            branch.cancel();
+        }
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    @SuppressWarnings("CloneDoesntCallSuperClone")
+    public Call<List<OwOResult<T>>> clone() {
+        List<Branch<?, T>> copies = new ArrayList<>(branches.size());
+        for (Branch<?, T> branch : branches) {
+            copies.add(branch.copy());
+        }
+
+        FanOutCall<T> call = new FanOutCall<>(size, maxConcurrency, maxWeight, copies);
+        call.slowStart = slowStart;
+        return call;
+    }
+
+    @Override
+    public Request request() {
+        return REQUEST;
+    }
+
+    private synchronized void markExecuted() {
+        if(executed) {
+            throw new IllegalStateException("Already executed.");
+        }
+
+        executed = true;
+    }
+
+    /**
+     * A single execution of all branches
+     */
+    private abstract class Run {
+
+        @NotNull private final AtomicReferenceArray<OwOResult<T>> results = new AtomicReferenceArray<>(size);
+        @NotNull private final AtomicInteger remaining = new AtomicInteger(branches.size());
+        @NotNull private final AtomicInteger running = new AtomicInteger();
+        @NotNull private final AtomicLong weight = new AtomicLong();
+        @NotNull private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean started = !slowStart;
+        private int next;
+
+        void start() {
+            if(branches.isEmpty()) {
+                done();
+                return;
+            }
+
+            drain();
+        }
+
+        /**
+         * Start branches while the limits allow it, completing any branch without a call on the way.
+         * Only one thread runs this loop at a time, branches completing meanwhile make it do another pass.
+         */
+        private void drain() {
+            if(wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            do {
+                while (next < branches.size()) {
+                    Branch<?, T> branch = branches.get(next);
+                    boolean immediate = canceled || branch.call == null;
+
+                    if(!immediate) {
+                        long current = weight.get();
+                        if(running.get() >= (started ? maxConcurrency : 1) || (current > 0 && current + branch.weight > maxWeight)) {
+                            break;
+                        }
+
+                        running.incrementAndGet();
+                        weight.addAndGet(branch.weight);
+                    }
+
+                    next++;
+
+                    if(canceled) {
+                        branch.fail(new IOException("Canceled"), results);
+                        finish();
+                    } else if(!branch.start(this)) {
+                        finish();
+                    }
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        /**
+         * Called when a branch whose call was enqueued completes
+         */
+        void complete(@NotNull Branch<?, T> branch) {
+            started = true;
+            running.decrementAndGet();
+            weight.addAndGet(-branch.weight);
+
+            finish();
+            drain();
+        }
+
+        private void finish() {
+            if(remaining.decrementAndGet() == 0) {
+                done();
+            }
+        }
+
+        @NotNull
+        List<OwOResult<T>> results() {
+            List<OwOResult<T>> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                OwOResult<T> result = results.get(i);
+                list.add(result == null ? OwOResult.<T>failure(new IllegalStateException("no result for item " + i)) : result);
+            }
+
+            return list;
+        }
+
+        abstract void done();
+    }
+
+    /**
+     * Part of a bulk operation, covering the items at {@code indices} with a single call
+     *
+     * @param <S> response type of call
+     * @param <T> type of value of a single item
+     */
+    abstract static class Branch<S, T> {
+
+        @NotNull final int[] indices;
+        @Nullable final Call<S> call;
+        @Nullable final Throwable throwable;
+        final long weight;
+
+        /**
+         * @param indices indices of the items covered by this branch
+         * @param call call to execute
+         */
+        Branch(@NotNull int[] indices, @NotNull Call<S> call) {
+            this(indices, call, 0);
+        }
+
+        /**
+         * @param indices indices of the items covered by this branch
+         * @param call call to execute
+         * @param weight weight of this branch, counted against the maximum weight while it runs
+         */
+        Branch(@NotNull int[] indices, @NotNull Call<S> call, long weight) {
+            this.indices = indices;
+            this.call = call;
+            this.throwable = null;
+            this.weight = weight;
+        }
+
+        /**
+         * Create a branch which fails without doing any network call
+         * @param indices indices of the items covered by this branch
+         * @param throwable cause of failure
+         */
+        Branch(@NotNull int[] indices, @NotNull Throwable throwable) {
+            this.indices = indices;
+            this.call = null;
+            this.throwable = throwable;
+            this.weight = 0;
+        }
+
+        /**
+         * Store results of a successful response
+         * @param body body of response
+         * @param results results of all items
+         */
+        abstract void succeed(@NotNull S body, @NotNull AtomicReferenceArray<OwOResult<T>> results);
+
+        /**
+         * Create a copy of this branch with a fresh call
+         * @return copy of branch
+         */
+        @NotNull
+        abstract Branch<S, T> copy();
+
+        void fail(@NotNull Throwable t, @NotNull AtomicReferenceArray<OwOResult<T>> results) {
+            for (int index : indices) {
+                results.set(index, OwOResult.<T>failure(t));
+            }
+        }
+
+        void cancel() {
+            if(call != null) {
+                call.cancel();
+            }
+        }
+
+        /**
+         * Start this branch
+         * @return true when a call has been enqueued, false when this branch completed right away
+         */
+        boolean start(@NotNull final FanOutCall<T>.Run run) {
+            if(call == null) {
+                fail(throwable == null ? new IllegalStateException("call and throwable are null!") : throwable, run.results);
+                return false;
+            }
+
+            call.enqueue(new Callback<S>() {
+                @Override
+                public void onResponse(Call<S> call, Response<S> response) {
+                    S body = response.body();
+
+                    if(response.isSuccessful() && body != null) {
+                        try {
+                            succeed(body, run.results);
+                        } catch (RuntimeException e) {
+                            fail(e, run.results);
+                        }
+                    } else {
+                        fail(new HttpException(response), run.results);
+                    }
+
+                    run.complete(Branch.this);
+                }
+
+                @Override
+                public void onFailure(Call<S> call, Throwable t) {
+                    fail(t, run.results);
+                    run.complete(Branch.this);
+                }
+            });
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.Request;
+import org.jetbrains.annotations.NotNull;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+
+/**
+ * {@link Call} which forwards to another call and lets subclasses act on its response
+ *
+ * @param <T> type of response body
+ */
+abstract class ForwardingCall<T> implements Call<T> {
+
+    @NotNull final Call<T> delegate;
+
+    ForwardingCall(@NotNull Call<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Called with every response before it is handed to the caller
+     * @param response response of {@link ForwardingCall#delegate}
+     * @return response to hand to the caller
+     *
+     * @throws IOException when the response should be turned into a failure
+     */
+    @NotNull
+    abstract Response<T> onResponse(@NotNull Response<T> response) throws IOException;
+
+    @Override
+    public abstract Call<T> clone();
+
+    @Override
+    public Response<T> execute() throws IOException {
+        return onResponse(delegate.execute());
+    }
+
+    @Override
+    public void enqueue(@NotNull final Callback<T> callback) {
+        delegate.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                Response<T> result;
+
+                try {
+                    result = ForwardingCall.this.onResponse(response);
+                } catch (IOException | RuntimeException e) {
+                    callback.onFailure(ForwardingCall.this, e);
+                    return;
+                }
+
+                callback.onResponse(ForwardingCall.this, result);
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                callback.onFailure(ForwardingCall.this, t);
+            }
+        });
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return delegate.isExecuted();
+    }
+
+    @Override
+    public void cancel() {
+        delegate.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return delegate.isCanceled();
+    }
+
+    @Override
+    public Request request() {
+        return delegate.request();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.HashingSink;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * {@link RequestBody} which computes the SHA-1 of the bytes it writes, so a {@link OwODedupIndex} entry is stored under
+ * the content which was actually sent, even when the source changed after it was looked up.
+ */
+class HashingRequestBody extends RequestBody {
+
+    @NotNull private final RequestBody delegate;
+
+    @Nullable private volatile byte[] hash;
+
+    HashingRequestBody(@NotNull RequestBody delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return body whose bytes are hashed
+     */
+    @NotNull
+    RequestBody delegate() {
+        return delegate;
+    }
+
+    /**
+     * @return SHA-1 of the last completely written body, or null when it was not written completely yet
+     */
+    @Nullable
+    byte[] hash() {
+        return hash;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        HashingSink hashingSink = HashingSink.sha1(sink);
+        BufferedSink buffered = Okio.buffer(hashingSink);
+
+        // not closed, which would close the connection's sink as well
+        delegate.writeTo(buffered);
+        buffered.emit();
+
+        hash = hashingSink.hash().toByteArray();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.Request;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Call} which sends a second, identical request when the first one is slower than usual and completes
+ * with whichever successful response arrives first. Only use this for idempotent calls.
+ *
+ * @param <T> type of response
+ */
+class HedgedCall<T> implements Call<T> {
+
+    @NotNull private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+    @NotNull private final Call<T> primary;
+    @NotNull private final OwORetryPolicy policy;
+
+    @Nullable private Call<T> hedge;
+    private boolean executed;
+    private boolean completed;
+    private int pending;
+    private volatile boolean canceled;
+
+    HedgedCall(@NotNull Call<T> primary, @NotNull OwORetryPolicy policy) {
+        this.primary = primary;
+        this.policy = policy;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Object[] outcome = new Object[1];
+
+        enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                outcome[0] = response;
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                outcome[0] = t;
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for response");
+        }
+
+        if(outcome[0] instanceof Response) {
+            @SuppressWarnings("unchecked")
+            Response<T> response = (Response<T>) outcome[0];
+            return response;
+        }
+
+        if(outcome[0] instanceof IOException) {
+            throw (IOException) outcome[0];
+        }
+
+        if(outcome[0] instanceof RuntimeException) {
+            throw (RuntimeException) outcome[0];
+        }
+
+        throw new IOException("request failed", (Throwable) outcome[0]);
+    }
+
+    @Override
+    public void enqueue(@NotNull final Callback<T> callback) {
+        synchronized (this) {
+            if(executed) {
+                throw new IllegalStateException("Already executed.");
+            }
+
+            executed = true;
+            pending = 1;
+        }
+
+        final long start = System.nanoTime();
+        start(primary, callback, start);
+
+        long delay = policy.hedgeDelayNanos();
+        if(delay < 0) {
+            return;
+        }
+
+        SCHEDULER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                Call<T> call;
+
+                synchronized (HedgedCall.this) {
+                    if(completed || canceled || !policy.withdraw()) {
+                        return;
+                    }
+
+                    call = hedge = primary.clone();
+                    pending++;
+                }
+
+                start(call, callback, start);
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void start(@NotNull Call<T> call, @NotNull final Callback<T> callback, final long start) {
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                if(!response.isSuccessful() && !last()) {
+                    return;
+                }
+
+                if(win(call)) {
+                    policy.recordLatency(System.nanoTime() - start);
+                    callback.onResponse(HedgedCall.this, response);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                if(last() && win(call)) {
+                    callback.onFailure(HedgedCall.this, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true when no other request is still running
+     */
+    private synchronized boolean last() {
+        return --pending <= 0 || completed;
+    }
+
+    /**
+     * Complete this call, cancelling the other request
+     * @return false when this call already completed
+     */
+    private boolean win(@NotNull Call<T> winner) {
+        Call<T> other;
+
+        synchronized (this) {
+            if(completed) {
+                return false;
+            }
+
+            completed = true;
+            other = winner == primary ? hedge : primary;
+        }
+
+        if(other != null) {
+            other.cancel();
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isExecuted() {
+        return executed;
+    }
+
+    @Override
+    public void cancel() {
+        Call<T> call;
+
+        synchronized (this) {
+            canceled = true;
+            call = hedge;
+        }
+
+        primary.cancel();
+        if(call != null) {
+            call.cancel();
+        }
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    @SuppressWarnings("CloneDoesntCallSuperClone")
+    public Call<T> clone() {
+        return new HedgedCall<>(primary.clone(), policy);
+    }
+
+    @Override
+    public Request request() {
+        return primary.request();
+    }
+
+    @NotNull
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "OwO hedging");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
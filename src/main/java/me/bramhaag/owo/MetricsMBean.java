@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Read-only MBean exposing {@link OwOMetrics}. Endpoints are only known once a call was made to them, so the
+ * attributes ({@code <endpoint>.<phase>.p99}, {@code <endpoint>.succeeded}, ...) are listed on every request.
+ */
+class MetricsMBean implements DynamicMBean {
+
+    private static final double[] PERCENTILES = { 50, 99, 99.9 };
+
+    @NotNull private final OwOMetrics metrics;
+
+    MetricsMBean(@NotNull OwOMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Supplier<Long> supplier = attributes().get(attribute);
+        if(supplier == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        return supplier.get();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Supplier<Long>> suppliers = attributes();
+        AttributeList list = new AttributeList();
+
+        for (String attribute : attributes) {
+            Supplier<Long> supplier = suppliers.get(attribute);
+            if(supplier != null) {
+                list.add(new Attribute(attribute, supplier.get()));
+            }
+        }
+
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : attributes().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false));
+        }
+
+        return new MBeanInfo(OwOMetrics.class.getName(), "owo.java call metrics, durations are in nanoseconds",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    @NotNull
+    private Map<String, Supplier<Long>> attributes() {
+        Map<String, Supplier<Long>> attributes = new TreeMap<>();
+
+        for (Map.Entry<String, OwOMetrics.Endpoint> entry : metrics.getEndpoints().entrySet()) {
+            String endpoint = entry.getKey();
+            OwOMetrics.Endpoint metrics = entry.getValue();
+
+            attributes.put(endpoint + ".succeeded", metrics::getSucceeded);
+            attributes.put(endpoint + ".failed", metrics::getFailed);
+            attributes.put(endpoint + ".bytesSent", metrics::getBytesSent);
+            attributes.put(endpoint + ".bytesReceived", metrics::getBytesReceived);
+
+            for (OwOMetrics.Phase phase : OwOMetrics.Phase.values()) {
+                String prefix = endpoint + "." + phase.name().toLowerCase(Locale.ROOT);
+                OwOHistogram histogram = metrics.getHistogram(phase);
+
+                attributes.put(prefix + ".count", histogram::getCount);
+                attributes.put(prefix + ".max", histogram::getMax);
+                for (double percentile : PERCENTILES) {
+                    attributes.put(prefix + ".p" + (percentile == 99.9 ? "999" : String.valueOf((int) percentile)), () -> histogram.getValueAtPercentile(percentile));
+                }
+            }
+        }
+
+        return attributes;
+    }
+}
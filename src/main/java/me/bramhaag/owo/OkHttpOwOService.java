@@ -0,0 +1,425 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link OwOService} written directly on OkHttp, which behaves like the implementation created by Retrofit but needs
+ * no dynamic proxy, annotation parsing or reflective JSON binding, so far fewer classes are loaded before the first request.
+ *
+ * Lambdas are avoided on purpose, the first lambda of a JVM bootstraps {@code java.lang.invoke} which costs more than
+ * the rest of this class.
+ */
+final class OkHttpOwOService implements OwOService {
+
+    @NotNull private final OkHttpClient client;
+    @NotNull private final HttpUrl baseUrl;
+    @NotNull private final PomfTypeAdapter adapter;
+
+    /**
+     * @param client client to send requests with
+     * @param baseUrl endpoint URL, which must end with a slash like a Retrofit base URL
+     * @param adapter adapter decoding pomf responses
+     *
+     * @throws IllegalArgumentException if {@code baseUrl} is not a http or https URL or does not end with a slash
+     */
+    OkHttpOwOService(@NotNull OkHttpClient client, @NotNull String baseUrl, @NotNull PomfTypeAdapter adapter) {
+        HttpUrl url = HttpUrl.parse(baseUrl);
+        if(url == null) {
+            throw new IllegalArgumentException("Illegal URL: " + baseUrl);
+        }
+
+        List<String> segments = url.pathSegments();
+        if(!"".equals(segments.get(segments.size() - 1))) {
+            throw new IllegalArgumentException("baseUrl must end in /: " + url);
+        }
+
+        this.client = client;
+        this.baseUrl = url;
+        this.adapter = adapter;
+    }
+
+    @Override
+    public Call<OwOFile> upload(MultipartBody.Part file) {
+        return new DirectCall<>(client, new UploadRequest(baseUrl, Collections.singletonList(file)), new FileDecoder(adapter));
+    }
+
+    @Override
+    public Call<List<OwOFile>> upload(List<MultipartBody.Part> files) {
+        return new DirectCall<>(client, new UploadRequest(baseUrl, files), new FilesDecoder(adapter));
+    }
+
+    @Override
+    public Call<String> shorten(String url, String resultUrl) {
+        return new DirectCall<>(client, new ShortenRequest(baseUrl, url, resultUrl), new StringDecoder());
+    }
+
+    /**
+     * Creates the request of a call, only once it is executed like Retrofit does
+     */
+    interface RequestFactory {
+        @NotNull
+        Request create();
+    }
+
+    /**
+     * Decodes the body of a successful response
+     * @param <T> type of response
+     */
+    interface Decoder<T> {
+        @Nullable
+        T decode(@NotNull ResponseBody body) throws IOException;
+    }
+
+    private static class UploadRequest implements RequestFactory {
+
+        @NotNull private final HttpUrl baseUrl;
+        @NotNull private final List<MultipartBody.Part> parts;
+
+        UploadRequest(@NotNull HttpUrl baseUrl, @NotNull List<MultipartBody.Part> parts) {
+            this.baseUrl = baseUrl;
+            this.parts = parts;
+        }
+
+        @NotNull
+        @Override
+        public Request create() {
+            MultipartBody.Builder body = new MultipartBody.Builder().setType(MultipartBody.FORM);
+
+            for (MultipartBody.Part part : parts) {
+                if(part != null) {
+                    body.addPart(part);
+                }
+            }
+
+            return new Request.Builder().url(baseUrl.resolve("upload/pomf")).post(body.build()).build();
+        }
+    }
+
+    private static class ShortenRequest implements RequestFactory {
+
+        @NotNull private final HttpUrl baseUrl;
+        @Nullable private final String url;
+        @Nullable private final String resultUrl;
+
+        ShortenRequest(@NotNull HttpUrl baseUrl, @Nullable String url, @Nullable String resultUrl) {
+            this.baseUrl = baseUrl;
+            this.url = url;
+            this.resultUrl = resultUrl;
+        }
+
+        @NotNull
+        @Override
+        public Request create() {
+            HttpUrl.Builder builder = baseUrl.newBuilder("shorten/polr?action=shorten");
+
+            if(url != null) {
+                builder.addQueryParameter("url", url);
+            }
+
+            if(resultUrl != null) {
+                builder.addQueryParameter("resultUrl", resultUrl);
+            }
+
+            return new Request.Builder().url(builder.build()).get().build();
+        }
+    }
+
+    private static class FileDecoder implements Decoder<OwOFile> {
+
+        @NotNull private final TypeAdapter<OwOFile> adapter;
+
+        FileDecoder(@NotNull PomfTypeAdapter adapter) {
+            this.adapter = adapter.first();
+        }
+
+        @Override
+        public OwOFile decode(@NotNull ResponseBody body) throws IOException {
+            try {
+                return adapter.read(new JsonReader(body.charStream()));
+            } finally {
+                body.close();
+            }
+        }
+    }
+
+    private static class FilesDecoder implements Decoder<List<OwOFile>> {
+
+        @NotNull private final PomfTypeAdapter adapter;
+
+        FilesDecoder(@NotNull PomfTypeAdapter adapter) {
+            this.adapter = adapter;
+        }
+
+        @Override
+        public List<OwOFile> decode(@NotNull ResponseBody body) throws IOException {
+            try {
+                return adapter.read(new JsonReader(body.charStream()));
+            } finally {
+                body.close();
+            }
+        }
+    }
+
+    private static class StringDecoder implements Decoder<String> {
+
+        @Override
+        public String decode(@NotNull ResponseBody body) throws IOException {
+            return body.string();
+        }
+    }
+
+    /**
+     * {@link Call} on top of an {@link okhttp3.Call}, following the behaviour of the call Retrofit creates
+     *
+     * @param <T> type of response body
+     */
+    static class DirectCall<T> implements Call<T> {
+
+        @NotNull private final OkHttpClient client;
+        @NotNull private final RequestFactory factory;
+        @NotNull private final Decoder<T> decoder;
+
+        private volatile boolean canceled;
+
+        @Nullable private okhttp3.Call rawCall;
+        @Nullable private Throwable creationFailure;
+        private boolean executed;
+
+        DirectCall(@NotNull OkHttpClient client, @NotNull RequestFactory factory, @NotNull Decoder<T> decoder) {
+            this.client = client;
+            this.factory = factory;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            okhttp3.Call call;
+
+            synchronized (this) {
+                if(executed) {
+                    throw new IllegalStateException("Already executed.");
+                }
+
+                executed = true;
+                call = rawCall();
+            }
+
+            if(canceled) {
+                call.cancel();
+            }
+
+            return parse(call.execute());
+        }
+
+        @Override
+        public void enqueue(@NotNull final Callback<T> callback) {
+            okhttp3.Call call;
+
+            synchronized (this) {
+                if(executed) {
+                    throw new IllegalStateException("Already executed.");
+                }
+
+                executed = true;
+
+                try {
+                    call = rawCall();
+                } catch (Throwable t) {
+                    callback.onFailure(this, t);
+                    return;
+                }
+            }
+
+            if(canceled) {
+                call.cancel();
+            }
+
+            call.enqueue(new okhttp3.Callback() {
+                @Override
+                public void onResponse(okhttp3.Call call, okhttp3.Response rawResponse) {
+                    Response<T> response;
+
+                    try {
+                        response = parse(rawResponse);
+                    } catch (Throwable t) {
+                        failure(t);
+                        return;
+                    }
+
+                    try {
+                        callback.onResponse(DirectCall.this, response);
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                    }
+                }
+
+                @Override
+                public void onFailure(okhttp3.Call call, IOException e) {
+                    failure(e);
+                }
+
+                private void failure(Throwable t) {
+                    try {
+                        callback.onFailure(DirectCall.this, t);
+                    } catch (Throwable e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+
+            okhttp3.Call call;
+            synchronized (this) {
+                call = rawCall;
+            }
+
+            if(call != null) {
+                call.cancel();
+            }
+        }
+
+        @Override
+        public boolean isCanceled() {
+            if(canceled) {
+                return true;
+            }
+
+            synchronized (this) {
+                return rawCall != null && rawCall.isCanceled();
+            }
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call<T> clone() {
+            return new DirectCall<>(client, factory, decoder);
+        }
+
+        @Override
+        public synchronized Request request() {
+            try {
+                return rawCall().request();
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to create request.", e);
+            }
+        }
+
+        /**
+         * Create the OkHttp call once, remembering why it could not be created
+         */
+        @NotNull
+        private okhttp3.Call rawCall() throws IOException {
+            if(rawCall != null) {
+                return rawCall;
+            }
+
+            if(creationFailure != null) {
+                if(creationFailure instanceof IOException) {
+                    throw (IOException) creationFailure;
+                }
+
+                throw (RuntimeException) creationFailure;
+            }
+
+            try {
+                return rawCall = client.newCall(factory.create());
+            } catch (RuntimeException e) {
+                creationFailure = e;
+                throw e;
+            }
+        }
+
+        /**
+         * Turn a raw response into a {@link Response}, an error body is buffered and a successful body is decoded
+         */
+        @NotNull
+        private Response<T> parse(@NotNull okhttp3.Response rawResponse) throws IOException {
+            ResponseBody rawBody = rawResponse.body();
+            rawResponse = rawResponse.newBuilder().body(new NoContentResponseBody(rawBody.contentType(), rawBody.contentLength())).build();
+
+            int code = rawResponse.code();
+            if(code < 200 || code >= 300) {
+                try {
+                    Buffer buffer = new Buffer();
+                    rawBody.source().readAll(buffer);
+                    return Response.error(ResponseBody.create(rawBody.contentType(), rawBody.contentLength(), buffer), rawResponse);
+                } finally {
+                    rawBody.close();
+                }
+            }
+
+            if(code == 204 || code == 205) {
+                rawBody.close();
+                return Response.success(null, rawResponse);
+            }
+
+            return Response.success(decoder.decode(rawBody), rawResponse);
+        }
+    }
+
+    /**
+     * Body of a response whose content was already decoded
+     */
+    private static class NoContentResponseBody extends ResponseBody {
+
+        @Nullable private final MediaType contentType;
+        private final long contentLength;
+
+        NoContentResponseBody(@Nullable MediaType contentType, long contentLength) {
+            this.contentType = contentType;
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public BufferedSource source() {
+            throw new IllegalStateException("Cannot read raw response body of a converted body.");
+        }
+    }
+}
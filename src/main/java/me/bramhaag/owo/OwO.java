@@ -2,11 +2,12 @@ package me.bramhaag.owo;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import me.bramhaag.owo.util.ByteBufferRequestBody;
+import me.bramhaag.owo.util.ChannelRequestBody;
 import me.bramhaag.owo.util.Consumer;
+import me.bramhaag.owo.util.ReaderRequestBody;
+import me.bramhaag.owo.util.TextRequestBody;
 import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
@@ -14,27 +15,45 @@ import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
-import okhttp3.Response;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 import retrofit2.converter.scalars.ScalarsConverterFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.lang.reflect.Type;
+import java.io.Reader;
 import java.net.URL;
-import java.net.URLConnection;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class OwO {
 
     @NotNull private OwOService service;
+    @NotNull private OkHttpClient client;
+    @NotNull private OwOTransport transport;
+    @NotNull private String endpoint;
+    @Nullable private OwOService bulkService;
 
     @NotNull private static final String USER_AGENT = String.format("WhatsThisClient (%s, %s)", "https://github.com/bramhaag/owo.java/", OwO.class.getPackage().getImplementationVersion());
 
@@ -42,9 +61,23 @@ public class OwO {
     @NotNull private static final String DEFAULT_UPLOAD_URL  = "https://owo.whats-th.is";
     @NotNull private static final String DEFAULT_SHORTEN_URL = "https://awau.moe";
 
-    @NotNull private static final String DEFAULT_CONTENT_TYPE = "application/octect-stream";
+    @NotNull static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    @NotNull private static final String DEFAULT_TEXT_CONTENT_TYPE = "application/text";
+
+    public static final int DEFAULT_BATCH_FILES = 10;
+    public static final long DEFAULT_BATCH_BYTES = 80L * 1024 * 1024;
+
+    public static final int DEFAULT_SHORTEN_WINDOW = 32;
+
+    private static final int BATCH_CONCURRENCY = 4;
 
     @Nullable private String shortenUrl;
+    @NotNull private String uploadUrl;
+
+    @Nullable private OwODedupIndex dedupIndex;
+    @Nullable private OwOShortenCache shortenCache;
+    @Nullable private OwORetryPolicy retryPolicy;
+    @Nullable private OwOLoadBalancer loadBalancer;
 
     /**
      * @param key OwO API key
@@ -52,21 +85,27 @@ public class OwO {
      * @throws NullPointerException if {@code key} is null
      */
     public OwO(@NotNull final String key) {
-        this.shortenUrl = DEFAULT_SHORTEN_URL;
-        this.service = createService(key, DEFAULT_ENDPOINT, DEFAULT_UPLOAD_URL);
+        this(new Builder().setKey(key));
     }
 
     /**
-     * @param key OwO API key
-     * @param endpoint Endpoint URL, defaults to {@link OwO#DEFAULT_ENDPOINT} when null
-     * @param uploadUrl Upload URL, defaults to {@link OwO#DEFAULT_UPLOAD_URL} when null
-     * @param shortenUrl Shorten URL, defaults to {@link OwO#DEFAULT_SHORTEN_URL} when null
+     * @param builder builder with a key, the endpoint, upload URL and shorten URL default to
+     *                {@link OwO#DEFAULT_ENDPOINT}, {@link OwO#DEFAULT_UPLOAD_URL} and {@link OwO#DEFAULT_SHORTEN_URL} when null
      *
-     * @throws NullPointerException if {@code key} is null
+     * @throws NullPointerException if the key of {@code builder} is null
      */
-    private OwO(@NotNull final String key, @Nullable String endpoint, @Nullable String uploadUrl, @Nullable String shortenUrl) {
-        this.shortenUrl = shortenUrl;
-        this.service = createService(key, endpoint, uploadUrl);
+    private OwO(@NotNull Builder builder) {
+        this.shortenUrl = builder.shortenUrl == null ? DEFAULT_SHORTEN_URL : builder.shortenUrl;
+        this.uploadUrl = builder.uploadUrl == null ? DEFAULT_UPLOAD_URL : builder.uploadUrl;
+        this.dedupIndex = builder.dedupIndex;
+        this.shortenCache = builder.shortenCache;
+        this.retryPolicy = builder.retryPolicy;
+        this.loadBalancer = builder.loadBalancer;
+        this.endpoint = builder.loadBalancer != null ? builder.loadBalancer.getEndpoints().get(0).getEndpoint()
+                : builder.endpoint == null ? DEFAULT_ENDPOINT : builder.endpoint;
+        this.transport = builder.transport == null ? OwOTransport.getDefault() : builder.transport;
+        this.client = createClient(builder, transport);
+        this.service = createService(builder, client, endpoint);
     }
 
     /**
@@ -81,7 +120,7 @@ public class OwO {
     }
 
     /**
-     * Upload a file with specified content type
+     * Upload a file with specified content type, the file is streamed from disk when the action is executed
      * @param file File to upload
      * @param contentType content type of {@code file}
      * @return {@link OwOAction} of type {@link OwOFile}
@@ -89,18 +128,235 @@ public class OwO {
      * @throws NullPointerException if {@code file} is null
      */
     public OwOAction<OwOFile> upload(@NotNull File file, @Nullable String contentType) {
-        if(contentType == null) {
-            String guessedType = URLConnection.guessContentTypeFromName(file.getName());
-            contentType = guessedType == null ? DEFAULT_CONTENT_TYPE : guessedType;
+        if(!file.isFile()) {
+            return new OwOAction<>(new FileNotFoundException(file.getPath()));
         }
 
         try {
-            return upload(Files.readAllBytes(file.toPath()), file.getName(), contentType);
+            return upload(createBody(file, contentType), file.getName(), true);
         } catch (IOException e) {
             return new OwOAction<>(e);
         }
     }
 
+    /**
+     * Upload multiple files with guessed content types, using at most {@link OwO#DEFAULT_BATCH_FILES} files and
+     * {@link OwO#DEFAULT_BATCH_BYTES} bytes per request
+     * @param files Files to upload
+     * @return {@link OwOAction} of type {@link List} of {@link OwOResult}, in the same order as {@code files}
+     *
+     * @throws NullPointerException if {@code files} is null
+     */
+    public OwOAction<List<OwOResult<OwOFile>>> upload(@NotNull Collection<File> files) {
+        return upload(files, DEFAULT_BATCH_FILES, DEFAULT_BATCH_BYTES);
+    }
+
+    /**
+     * Upload multiple files with guessed content types, splitting them into requests of at most {@code maxFiles} files
+     * and {@code maxBytes} bytes. A file which is larger than {@code maxBytes} is sent in a request of its own.
+     * When a request fails, only the files in that request are reported as failed.
+     * @param files Files to upload
+     * @param maxFiles maximum amount of files per request
+     * @param maxBytes maximum total size of the files per request
+     * @return {@link OwOAction} of type {@link List} of {@link OwOResult}, in the same order as {@code files}
+     *
+     * @throws NullPointerException if {@code files} is null
+     * @throws IllegalArgumentException if {@code maxFiles} or {@code maxBytes} is not positive
+     */
+    public OwOAction<List<OwOResult<OwOFile>>> upload(@NotNull Collection<File> files, int maxFiles, long maxBytes) {
+        if(maxFiles <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxFiles and maxBytes must be positive!");
+        }
+
+        List<File> list = new ArrayList<>(files);
+        return new OwOAction<List<OwOResult<OwOFile>>>(new FanOutCall<>(list.size(), BATCH_CONCURRENCY, batch(list, null, null, maxFiles, maxBytes)));
+    }
+
+    /**
+     * Upload all files in a directory tree with guessed content types. The tree is walked in parallel on the
+     * {@link ForkJoinPool#commonPool()}, small files are uploaded together in batches of at most
+     * {@link OwO#DEFAULT_BATCH_FILES} files and {@link OwO#DEFAULT_BATCH_BYTES} bytes, and at most 4 requests run at once
+     * @param root root of the tree
+     * @return future which completes with a manifest mapping every file, and every directory which could not be read, to its result
+     *
+     * @throws NullPointerException if {@code root} is null
+     */
+    public CompletableFuture<Map<Path, OwOResult<OwOFile>>> uploadTree(@NotNull Path root) {
+        return uploadTree(root, BATCH_CONCURRENCY, 4 * DEFAULT_BATCH_BYTES);
+    }
+
+    /**
+     * Upload all files in a directory tree with guessed content types. The tree is walked in parallel on the
+     * {@link ForkJoinPool#commonPool()} and small files are uploaded together in batches of at most
+     * {@link OwO#DEFAULT_BATCH_FILES} files and {@link OwO#DEFAULT_BATCH_BYTES} bytes
+     * @param root root of the tree
+     * @param maxConcurrency maximum amount of requests running at once
+     * @param maxBytesInFlight maximum amount of bytes being uploaded at once, a larger file is uploaded on its own
+     * @return future which completes with a manifest mapping every file, and every directory which could not be read, to its result
+     *
+     * @throws NullPointerException if {@code root} is null
+     * @throws IllegalArgumentException if {@code maxConcurrency} or {@code maxBytesInFlight} is not positive
+     */
+    public CompletableFuture<Map<Path, OwOResult<OwOFile>>> uploadTree(@NotNull Path root, int maxConcurrency, long maxBytesInFlight) {
+        return uploadTree(root, maxConcurrency, maxBytesInFlight, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Upload all files in a directory tree with guessed content types. The tree is walked in parallel on {@code pool}
+     * and small files are uploaded together in batches of at most {@link OwO#DEFAULT_BATCH_FILES} files and
+     * {@link OwO#DEFAULT_BATCH_BYTES} bytes. Cancelling the returned future stops the walk and cancels the uploads
+     * @param root root of the tree
+     * @param maxConcurrency maximum amount of requests running at once
+     * @param maxBytesInFlight maximum amount of bytes being uploaded at once, a larger file is uploaded on its own
+     * @param pool pool walking the tree and sniffing content types
+     * @return future which completes with a manifest mapping every file, and every directory which could not be read, to its result
+     *
+     * @throws NullPointerException if {@code root} or {@code pool} is null
+     * @throws IllegalArgumentException if {@code maxConcurrency} or {@code maxBytesInFlight} is not positive
+     */
+    public CompletableFuture<Map<Path, OwOResult<OwOFile>>> uploadTree(@NotNull Path root, final int maxConcurrency, final long maxBytesInFlight, @NotNull ForkJoinPool pool) {
+        if(maxConcurrency <= 0 || maxBytesInFlight <= 0) {
+            throw new IllegalArgumentException("maxConcurrency and maxBytesInFlight must be positive!");
+        }
+
+        final TreeWalker walker = new TreeWalker(root);
+        final AtomicReference<CompletableFuture<?>> uploads = new AtomicReference<>();
+
+        final CompletableFuture<Map<Path, OwOResult<OwOFile>>> future = new CompletableFuture<Map<Path, OwOResult<OwOFile>>>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                walker.cancel();
+
+                CompletableFuture<?> running = uploads.get();
+                if(running != null) {
+                    running.cancel(mayInterruptIfRunning);
+                }
+
+                return cancelled;
+            }
+        };
+
+        pool.execute(() -> {
+            final List<TreeWalker.Entry> entries;
+            try {
+                entries = walker.invoke();
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                return;
+            }
+
+            List<File> files = new ArrayList<>(entries.size());
+            List<String> contentTypes = new ArrayList<>(entries.size());
+            List<Long> sizes = new ArrayList<>(entries.size());
+
+            for (TreeWalker.Entry entry : entries) {
+                if(entry.throwable == null) {
+                    files.add(entry.path.toFile());
+                    contentTypes.add(entry.contentType);
+                    sizes.add(entry.size);
+                }
+            }
+
+            // canceled while walking, before any batch is started
+            if(future.isCancelled()) {
+                return;
+            }
+
+            FanOutCall<OwOFile> call = new FanOutCall<>(files.size(), maxConcurrency, maxBytesInFlight, batch(files, contentTypes, sizes, DEFAULT_BATCH_FILES, DEFAULT_BATCH_BYTES));
+            CompletableFuture<List<OwOResult<OwOFile>>> running = new OwOAction<List<OwOResult<OwOFile>>>(call).executeAsync();
+
+            // canceled between the check above and publishing the running upload
+            uploads.set(running);
+            if(future.isCancelled()) {
+                running.cancel(false);
+                return;
+            }
+
+            running.whenComplete((results, throwable) -> {
+                if(throwable != null) {
+                    future.completeExceptionally(throwable);
+                    return;
+                }
+
+                Map<Path, OwOResult<OwOFile>> manifest = new LinkedHashMap<>();
+                Iterator<OwOResult<OwOFile>> iterator = results.iterator();
+
+                for (TreeWalker.Entry entry : entries) {
+                    manifest.put(entry.path, entry.throwable == null ? iterator.next() : OwOResult.<OwOFile>failure(entry.throwable));
+                }
+
+                future.complete(manifest);
+            });
+        });
+
+        return future;
+    }
+
+    /**
+     * Split files into requests of at most {@code maxFiles} files and {@code maxBytes} bytes, keeping their order
+     * @param files files to upload
+     * @param contentTypes content type of every file, guessed from their first bytes and names when null
+     * @param sizes size of every file, read from the file system when null
+     * @param maxFiles maximum amount of files per request
+     * @param maxBytes maximum total size of the files per request
+     * @return branches uploading the files, weighted by their size
+     */
+    private List<FanOutCall.Branch<?, OwOFile>> batch(@NotNull List<File> files, @Nullable List<String> contentTypes, @Nullable List<Long> sizes, int maxFiles, long maxBytes) {
+        List<FanOutCall.Branch<?, OwOFile>> branches = new ArrayList<>();
+        List<MultipartBody.Part> parts = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        long bytes = 0;
+
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+
+            if(!file.isFile()) {
+                branches.add(new UploadBranch(new int[] { i }, new FileNotFoundException(file.getPath())));
+                continue;
+            }
+
+            RequestBody body;
+            try {
+                body = createBody(file, contentTypes == null ? null : contentTypes.get(i));
+            } catch (IOException e) {
+                branches.add(new UploadBranch(new int[] { i }, e));
+                continue;
+            }
+
+            long length = sizes == null ? file.length() : sizes.get(i);
+            if(!parts.isEmpty() && (parts.size() >= maxFiles || bytes + length > maxBytes)) {
+                branches.add(new UploadBranch(toArray(indices), route(service.upload(parts)), bytes));
+                parts = new ArrayList<>();
+                indices.clear();
+                bytes = 0;
+            }
+
+            parts.add(MultipartBody.Part.createFormData("files[]", file.getName(), body));
+            indices.add(i);
+            bytes += length;
+        }
+
+        if(!parts.isEmpty()) {
+            branches.add(new UploadBranch(toArray(indices), route(service.upload(parts)), bytes));
+        }
+
+        return branches;
+    }
+
+    /**
+     * Create a {@link OwOProcessor} which uploads every file it receives, requesting new files from its publisher
+     * only while less than {@code concurrency} files are being uploaded or waiting for its subscriber
+     * @param concurrency maximum amount of files between publisher and subscriber
+     * @param ordered true to emit results in the order the files were received, false to emit them as they complete
+     * @return processor of files to upload results
+     *
+     * @throws IllegalArgumentException if {@code concurrency} is not positive
+     */
+    public OwOProcessor<File, OwOFile> uploadProcessor(int concurrency, boolean ordered) {
+        return new OwOProcessor<>(this::upload, concurrency, ordered);
+    }
+
     /**
      * Upload file from an URL with {@link OwO#USER_AGENT} as user agent
      * and with a guessed content type
@@ -114,7 +370,9 @@ public class OwO {
     }
 
     /**
-     * Upload file from an URL with a specified user agent and content type
+     * Upload file from an URL with a specified user agent and content type.
+     * The URL is opened and the remote file is piped into the upload once the action is executed, only its first bytes
+     * are buffered to guess the content type. An action which is never executed never opens the URL
      * @param url URL of file
      * @param contentType content type of file from {@code url}
      * @param userAgent user agent used to retrieve file
@@ -123,37 +381,8 @@ public class OwO {
      * @throws NullPointerException if {@code url} is null
      */
     public OwOAction<OwOFile> upload(@NotNull URL url, @Nullable String contentType, @Nullable String userAgent) {
-        URLConnection connection;
-
-        try {
-            connection = url.openConnection();
-        } catch (IOException e) {
-            return new OwOAction<>(e);
-        }
-
-        connection.setRequestProperty("User-Agent", userAgent == null ? USER_AGENT : userAgent);
-
-        try (InputStream stream = connection.getInputStream()) {
-            byte[] buffer = new byte[8192];
-            int pos;
-
-            try (ByteArrayOutputStream output = new ByteArrayOutputStream()) {
-                while ((pos = stream.read(buffer)) != -1) {
-                    output.write(buffer, 0, pos);
-                }
-
-                byte[] data = output.toByteArray();
-
-                if(contentType == null) {
-                    String guessedType = URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(data));
-                    contentType = guessedType == null ? DEFAULT_CONTENT_TYPE : guessedType;
-                }
-
-                return upload(data, null, contentType);
-            }
-        } catch (IOException e) {
-            return new OwOAction<>(e);
-        }
+        UrlRequestBody body = new UrlRequestBody(url, contentType, userAgent == null ? USER_AGENT : userAgent);
+        return new OwOAction<OwOFile>(new ClosingCall<>(route(service.upload(MultipartBody.Part.createFormData("files[]", null, body))), body));
     }
 
     /**
@@ -168,7 +397,7 @@ public class OwO {
     }
 
     /**
-     * Upload a string of text using a specified content type
+     * Upload a string of text as UTF-8 using a specified content type
      * @param data String to upload
      * @param contentType content type of {@code data}
      * @return {@link OwOAction} of type {@link OwOFile}
@@ -176,11 +405,35 @@ public class OwO {
      * @throws NullPointerException if {@code data} is null
      */
     public OwOAction<OwOFile> upload(@NotNull String data, @Nullable String contentType) {
-        if(contentType == null) {
-            contentType = "application/text";
-        }
+        return upload(data, null, contentType);
+    }
+
+    /**
+     * Upload text with a specified filename and content type. The text is encoded as UTF-8 while it is sent,
+     * so no encoded copy is kept in memory, and it must not be modified until the action has completed
+     * @param data text to upload
+     * @param fileName name of file
+     * @param contentType content type of {@code data}, {@code application/text} when null, {@code charset=utf-8} is added when it has no charset
+     * @return {@link OwOAction} of type {@link OwOFile}
+     *
+     * @throws NullPointerException if {@code data} is null
+     */
+    public OwOAction<OwOFile> upload(@NotNull CharSequence data, @Nullable String fileName, @Nullable String contentType) {
+        return upload(new TextRequestBody(MediaType.parse(contentType == null ? DEFAULT_TEXT_CONTENT_TYPE : contentType), data), fileName, true);
+    }
 
-        return upload(data.getBytes(), null, contentType);
+    /**
+     * Upload text from a {@link Reader} with a specified filename and content type. The text is encoded as UTF-8 while it is sent
+     * and the reader is closed afterwards, so the action can only be executed once
+     * @param reader reader to upload
+     * @param fileName name of file
+     * @param contentType content type of the text, {@code application/text} when null, {@code charset=utf-8} is added when it has no charset
+     * @return {@link OwOAction} of type {@link OwOFile}
+     *
+     * @throws NullPointerException if {@code reader} is null
+     */
+    public OwOAction<OwOFile> upload(@NotNull Reader reader, @Nullable String fileName, @Nullable String contentType) {
+        return upload(new ReaderRequestBody(MediaType.parse(contentType == null ? DEFAULT_TEXT_CONTENT_TYPE : contentType), reader), fileName, false);
     }
 
     /**
@@ -216,10 +469,102 @@ public class OwO {
      * @throws NullPointerException if {@code data} is null
      */
     public OwOAction<OwOFile> upload(@NotNull byte[] data, @Nullable String fileName, @Nullable String contentType) {
-        RequestBody filePart = RequestBody.create(MediaType.parse(contentType == null ? DEFAULT_CONTENT_TYPE : contentType), data);
-        MultipartBody.Part uploadFile = MultipartBody.Part.createFormData("files[]", fileName, filePart);
+        RequestBody body = RequestBody.create(MediaType.parse(contentType == null ? DEFAULT_CONTENT_TYPE : contentType), data);
+        return upload(body, fileName, true);
+    }
+
+    /**
+     * Upload the remaining bytes of a {@link ByteBuffer} without a filename and {@link OwO#DEFAULT_CONTENT_TYPE} as content type
+     * @param data data to upload, which can be a direct or memory mapped buffer
+     * @return {@link OwOAction} of type {@link OwOFile}
+     *
+     * @throws NullPointerException if {@code data} is null
+     */
+    public OwOAction<OwOFile> upload(@NotNull ByteBuffer data) {
+        return upload(data, null);
+    }
+
+    /**
+     * Upload the remaining bytes of a {@link ByteBuffer} with a specified filename and {@link OwO#DEFAULT_CONTENT_TYPE} as content type
+     * @param data data to upload, which can be a direct or memory mapped buffer
+     * @param fileName name of file
+     * @return {@link OwOAction} of type {@link OwOFile}
+     *
+     * @throws NullPointerException if {@code data} is null
+     */
+    public OwOAction<OwOFile> upload(@NotNull ByteBuffer data, @Nullable String fileName) {
+        return upload(data, fileName, null);
+    }
+
+    /**
+     * Upload the remaining bytes of a {@link ByteBuffer} with a specified filename and content type.
+     * The buffer is written into the request without copying it onto the heap first, its position is not changed
+     * and it must not be modified until the action has completed
+     * @param data data to upload, which can be a direct or memory mapped buffer
+     * @param fileName name of file
+     * @param contentType content type of data
+     * @return {@link OwOAction} of type {@link OwOFile}
+     *
+     * @throws NullPointerException if {@code data} is null
+     */
+    public OwOAction<OwOFile> upload(@NotNull ByteBuffer data, @Nullable String fileName, @Nullable String contentType) {
+        RequestBody body = new ByteBufferRequestBody(MediaType.parse(contentType == null ? DEFAULT_CONTENT_TYPE : contentType), data);
+        return upload(body, fileName, true);
+    }
+
+    /**
+     * Upload the content of a blocking {@link ReadableByteChannel} with a specified filename and content type.
+     * The channel is piped into the request once the action is executed and closed afterwards, so the action can only be executed once.
+     * The size of {@link SeekableByteChannel}s, such as {@link java.nio.channels.FileChannel}, is sent up front
+     * @param channel channel to upload
+     * @param fileName name of file
+     * @param contentType content type of the channel, {@link OwO#DEFAULT_CONTENT_TYPE} when null
+     * @return {@link OwOAction} of type {@link OwOFile}
+     *
+     * @throws NullPointerException if {@code channel} is null
+     */
+    public OwOAction<OwOFile> upload(@NotNull ReadableByteChannel channel, @Nullable String fileName, @Nullable String contentType) {
+        long contentLength = -1;
+
+        if(channel instanceof SeekableByteChannel) {
+            try {
+                SeekableByteChannel seekable = (SeekableByteChannel) channel;
+                contentLength = seekable.size() - seekable.position();
+            } catch (IOException e) {
+                closeQuietly(channel);
+                return new OwOAction<>(e);
+            }
+        }
+
+        return upload(new ChannelRequestBody(MediaType.parse(contentType == null ? DEFAULT_CONTENT_TYPE : contentType), contentLength, channel), fileName, false);
+    }
+
+    /**
+     * Upload a {@link RequestBody} as a single {@code files[]} part
+     * @param body body of the file, which is written to the connection when the call is executed
+     * @param fileName name of file
+     * @param dedup whether the upload goes through the dedup index when it is set, only for bodies which can be written more than once
+     * @return {@link OwOAction} of type {@link OwOFile}
+     */
+    OwOAction<OwOFile> upload(@NotNull RequestBody body, @Nullable String fileName, boolean dedup) {
+        if(!dedup || dedupIndex == null) {
+            return new OwOAction<>(route(service.upload(MultipartBody.Part.createFormData("files[]", fileName, body))));
+        }
+
+        HashingRequestBody hashing = new HashingRequestBody(body);
+        Call<OwOFile> call = route(service.upload(MultipartBody.Part.createFormData("files[]", fileName, hashing)));
+
+        return new OwOAction<OwOFile>(new DedupCall(call, dedupIndex, hashing, client.dispatcher().executorService(), uploadUrl));
+    }
 
-        return new OwOAction<>(service.upload(uploadFile));
+    /**
+     * Make an upload call use the upload URL of the endpoint which served it when a {@link OwOLoadBalancer} is set
+     * @param call upload call
+     * @param <T> type of response
+     * @return call which sets the full URL of the uploaded files
+     */
+    private <T> Call<T> route(@NotNull Call<T> call) {
+        return loadBalancer == null ? call : loadBalancer.wrap(call);
     }
 
     /**
@@ -228,40 +573,478 @@ public class OwO {
      * @return {@link OwOAction} of type {@link String}, which can be used with {@link OwOAction#execute(Consumer)} or {@link OwOAction#executeSync()}
      */
     public OwOAction<String> shorten(@NotNull String url) {
-        return new OwOAction<>(service.shorten(url, shortenUrl == null ? DEFAULT_SHORTEN_URL : shortenUrl));
+        return new OwOAction<>(shortenCall(service, url));
+    }
+
+    /**
+     * Shorten many URLs with at most {@link OwO#DEFAULT_SHORTEN_WINDOW} requests running at once
+     * @param urls URLs to be shortened
+     * @return {@link OwOAction} of type {@link List} of {@link OwOResult}, in the same order as {@code urls}
+     *
+     * @throws NullPointerException if {@code urls} is null
+     */
+    public OwOAction<List<OwOResult<String>>> shorten(@NotNull Collection<String> urls) {
+        return shorten(urls, DEFAULT_SHORTEN_WINDOW);
+    }
+
+    /**
+     * Shorten many URLs, every distinct URL is shortened once and at most {@code window} requests run at once.
+     * These requests go through the bulk dispatcher of the transport, which is shared by every instance using the
+     * transport and only limits them to the overall request limit, not to the per host limit. They are multiplexed over
+     * a single connection when the server supports HTTP/2, or use up to {@code window} connections otherwise.
+     * Bulk and regular requests are capped separately, so together they can run up to twice the overall limit.
+     * Without any pooled connection a single request runs first, so the others can reuse its connection
+     * @param urls URLs to be shortened
+     * @param window maximum amount of requests running at once
+     * @return {@link OwOAction} of type {@link List} of {@link OwOResult}, in the same order as {@code urls},
+     *         a URL which appears several times gets the same result every time
+     *
+     * @throws NullPointerException if {@code urls} is null
+     * @throws IllegalArgumentException if {@code window} is not positive
+     */
+    public OwOAction<List<OwOResult<String>>> shorten(@NotNull Collection<String> urls, int window) {
+        if(window <= 0) {
+            throw new IllegalArgumentException("window must be positive!");
+        }
+
+        Map<String, List<Integer>> distinct = new LinkedHashMap<>();
+        List<FanOutCall.Branch<?, String>> branches = new ArrayList<>();
+        int index = 0;
+
+        for (String url : urls) {
+            if(url == null) {
+                branches.add(new ShortenBranch(new int[] { index++ }, new IllegalArgumentException("url cannot be null!")));
+                continue;
+            }
+
+            distinct.computeIfAbsent(url, key -> new ArrayList<>(1)).add(index++);
+        }
+
+        OwOService bulk = bulkService();
+        for (Map.Entry<String, List<Integer>> entry : distinct.entrySet()) {
+            branches.add(new ShortenBranch(toArray(entry.getValue()), shortenCall(bulk, entry.getKey())));
+        }
+
+        FanOutCall<String> call = new FanOutCall<>(index, window, branches);
+        if(client.connectionPool().connectionCount() == 0) {
+            call.slowStart();
+        }
+
+        return new OwOAction<List<OwOResult<String>>>(call);
+    }
+
+    /**
+     * Create a shorten call, hedged when the retry policy enables it and answered from the shorten cache when it is set
+     * @param service service to create the call with
+     * @param url URL to be shortened
+     * @return shorten call
+     */
+    private Call<String> shortenCall(@NotNull OwOService service, @NotNull String url) {
+        String resultUrl = shortenUrl == null ? DEFAULT_SHORTEN_URL : shortenUrl;
+        Call<String> call = service.shorten(url, resultUrl);
+
+        if(retryPolicy != null) {
+            call = retryPolicy.hedge(call);
+        }
+
+        return shortenCache == null ? call : shortenCache.wrap(url, resultUrl, call);
+    }
+
+    /**
+     * Get the service for bulk requests, which shares the connection pool, interceptors and threads of {@link OwO#service}
+     * but runs on the bulk dispatcher of the transport
+     * @return service for bulk requests
+     */
+    @NotNull
+    private synchronized OwOService bulkService() {
+        if(bulkService == null) {
+            OkHttpClient bulkClient = client.newBuilder().dispatcher(transport.getBulkDispatcher()).build();
+            bulkService = new OkHttpOwOService(bulkClient, endpoint, new PomfTypeAdapter(uploadUrl));
+        }
+
+        return bulkService;
+    }
+
+    /**
+     * @return URL which is put in front of the keys of uploaded files
+     */
+    @NotNull
+    String getUploadUrl() {
+        return uploadUrl;
+    }
+
+    /**
+     * Create a body which streams {@code file} from disk
+     * @param file file to upload
+     * @param contentType content type of {@code file}, guessed from its first bytes and its name when null
+     * @return body of file
+     */
+    private static RequestBody createBody(@NotNull File file, @Nullable String contentType) throws IOException {
+        if(contentType == null) {
+            contentType = ContentSniffer.guess(file);
+        }
+
+        return RequestBody.create(MediaType.parse(contentType), file);
+    }
+
+    private static int[] toArray(@NotNull List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+
+        return array;
+    }
+
+    /**
+     * Close a closeable, ignoring any exception
+     * @param closeable closeable to close, can be null
+     */
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if(closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Create client
+     * @param builder builder with a key or key pool
+     * @param transport transport of the client
+     * @return client of the transport with the interceptors of {@code builder}
+     */
+    private static OkHttpClient createClient(@NotNull Builder builder, @NotNull OwOTransport transport) {
+        OkHttpClient.Builder clientBuilder = transport.getClient().newBuilder();
+
+        if(builder.keyPool == null) {
+            clientBuilder.addInterceptor(new KeyInterceptor(builder.key));
+        }
+
+        // 429/503 responses are sent again by exactly one layer: the rate limiter, else the retry policy, else the
+        // load balancer. Every other layer passes them on, and every resend of an inner layer takes from the retry budget
+        if(builder.retryPolicy != null) {
+            clientBuilder.addInterceptor(builder.retryPolicy.interceptor(builder.rateLimiter == null));
+        }
+
+        if(builder.rateLimiter != null) {
+            clientBuilder.addInterceptor(builder.rateLimiter.interceptor(builder.retryPolicy));
+        }
+
+        // keys are added after the rate limiter, so a throttled request moves to another key before the limiter backs off
+        if(builder.keyPool != null) {
+            clientBuilder.addInterceptor(builder.keyPool.interceptor(USER_AGENT, builder.retryPolicy));
+        }
+
+        if(builder.loadBalancer != null) {
+            boolean failoverThrottled = builder.retryPolicy == null && builder.rateLimiter == null;
+            clientBuilder.addInterceptor(builder.loadBalancer.interceptor(transport.getClient(), builder.retryPolicy, failoverThrottled));
+        }
+
+        if(builder.metrics != null) {
+            clientBuilder.eventListenerFactory(builder.metrics.eventListenerFactory());
+        }
+
+        clientBuilder.addNetworkInterceptor(new OneShotInterceptor());
+
+        return clientBuilder.build();
     }
 
     /**
      * Create service
-     * @param key OwO API key
-     * @param endpoint Endpoint URL, defaults to {@link OwO#DEFAULT_ENDPOINT} when null
-     * @param uploadUrl Upload URL, defaults to {@link OwO#DEFAULT_UPLOAD_URL} when null
+     * @param builder builder, the upload URL defaults to {@link OwO#DEFAULT_UPLOAD_URL} when null
+     * @param client client created by {@link OwO#createClient(Builder, OwOTransport)}
+     * @param endpoint endpoint URL
      * @return service
      */
-    private static OwOService createService(@NotNull final String key, @Nullable String endpoint, @Nullable final String uploadUrl) {
-        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new Interceptor() {
-            @Override
-            public Response intercept(Chain chain) throws IOException {
-                Request request = chain.request();
-                HttpUrl url = request.url().newBuilder().addQueryParameter("key", key).build();
-                return chain.proceed(request.newBuilder().header("User-Agent", USER_AGENT).url(url).build());
-            }
-        }).build();
+    private static OwOService createService(@NotNull Builder builder, @NotNull OkHttpClient client, @NotNull String endpoint) {
+        if(builder.fastStart) {
+            return new OkHttpOwOService(client, endpoint, new PomfTypeAdapter(builder.uploadUrl == null ? DEFAULT_UPLOAD_URL : builder.uploadUrl));
+        }
 
         Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(endpoint == null ? DEFAULT_ENDPOINT : endpoint)
+                .baseUrl(endpoint)
                 .client(client)
                 .addConverterFactory(ScalarsConverterFactory.create())
-                .addConverterFactory(GsonConverterFactory.create(new GsonBuilder().registerTypeAdapter(OwOFile.class, new JsonDeserializer<OwOFile>() {
-                    @Override
-                    public OwOFile deserialize(JsonElement json, Type type, JsonDeserializationContext context) throws JsonParseException {
-                        return new Gson().fromJson(json.getAsJsonObject().get("files").getAsJsonArray().get(0), OwOFile.class).setFullUrl(uploadUrl == null ? DEFAULT_UPLOAD_URL : uploadUrl);
-                    }}).create()))
+                .addConverterFactory(GsonConverterFactory.create(createGson(builder.uploadUrl)))
                 .build();
 
         return retrofit.create(OwOService.class);
     }
 
+    /**
+     * Create {@link Gson} instance which decodes pomf responses into {@link OwOFile}s
+     * @param uploadUrl Upload URL, defaults to {@link OwO#DEFAULT_UPLOAD_URL} when null
+     * @return gson
+     */
+    static Gson createGson(@Nullable String uploadUrl) {
+        PomfTypeAdapter adapter = new PomfTypeAdapter(uploadUrl == null ? DEFAULT_UPLOAD_URL : uploadUrl);
+
+        return new GsonBuilder()
+                .registerTypeAdapter(OwOFile.class, adapter.first())
+                .registerTypeAdapter(new TypeToken<List<OwOFile>>() {}.getType(), adapter)
+                .create();
+    }
+
+    /**
+     * {@link Interceptor} which adds the API key and {@link OwO#USER_AGENT} to every request
+     */
+    static class KeyInterceptor implements Interceptor {
+
+        @NotNull private final String key;
+
+        KeyInterceptor(@NotNull String key) {
+            this.key = key;
+        }
+
+        @Override
+        public okhttp3.Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            HttpUrl url = request.url().newBuilder().addQueryParameter("key", key).build();
+            return chain.proceed(request.newBuilder().header("User-Agent", USER_AGENT).url(url).build());
+        }
+    }
+
+    /**
+     * Network {@link Interceptor} which keeps OkHttp from sending a request with a one-shot body again by itself.
+     * OkHttp follows up a {@code 503} with {@code Retry-After: 0} immediately, which fails while writing the body
+     * and hides the {@code 503} from the caller, so that header is removed from responses to such requests
+     */
+    static class OneShotInterceptor implements Interceptor {
+
+        @Override
+        public okhttp3.Response intercept(Chain chain) throws IOException {
+            okhttp3.Response response = chain.proceed(chain.request());
+
+            if(response.code() == 503 && Requests.retryAfterNanos(response) == 0 && !Requests.isReplayable(chain.request())) {
+                return response.newBuilder().removeHeader("Retry-After").build();
+            }
+
+            return response;
+        }
+    }
+
+    /**
+     * {@link ForwardingCall} which answers from a {@link OwODedupIndex} when the content was uploaded before, and adds
+     * successful uploads to it. The content is looked up when the call runs, on a thread of the dispatcher for async
+     * calls, and stored under the hash of the bytes which were actually sent
+     */
+    private static class DedupCall extends ForwardingCall<OwOFile> {
+
+        @NotNull private final OwODedupIndex index;
+        @NotNull private final HashingRequestBody body;
+        @NotNull private final Executor executor;
+        @NotNull private final String uploadUrl;
+
+        private boolean executed;
+
+        DedupCall(@NotNull Call<OwOFile> delegate, @NotNull OwODedupIndex index, @NotNull HashingRequestBody body,
+                  @NotNull Executor executor, @NotNull String uploadUrl) {
+            super(delegate);
+            this.index = index;
+            this.body = body;
+            this.executor = executor;
+            this.uploadUrl = uploadUrl;
+        }
+
+        @Override
+        public Response<OwOFile> execute() throws IOException {
+            OwOFile cached = lookup();
+            return cached != null ? Response.success(cached) : super.execute();
+        }
+
+        @Override
+        public void enqueue(@NotNull Callback<OwOFile> callback) {
+            executor.execute(() -> {
+                OwOFile cached;
+
+                try {
+                    cached = lookup();
+                } catch (IOException | RuntimeException e) {
+                    callback.onFailure(this, e);
+                    return;
+                }
+
+                if(cached != null) {
+                    callback.onResponse(this, Response.success(cached));
+                } else {
+                    DedupCall.super.enqueue(callback);
+                }
+            });
+        }
+
+        /**
+         * @return file uploaded before with the current content of the body, or null when it has to be uploaded
+         */
+        @Nullable
+        private OwOFile lookup() throws IOException {
+            synchronized (this) {
+                if(executed) {
+                    throw new IllegalStateException("Already executed.");
+                }
+
+                executed = true;
+            }
+
+            if(delegate.isCanceled()) {
+                throw new IOException("Canceled");
+            }
+
+            OwOFile cached = index.get(OwODedupIndex.key(body.delegate()));
+            if(cached == null) {
+                return null;
+            }
+
+            // the index keeps the upload URL of the endpoint which served the file, except in old indexes
+            return cached.getFullUrl() == null ? cached.setFullUrl(uploadUrl) : cached;
+        }
+
+        @NotNull
+        @Override
+        Response<OwOFile> onResponse(@NotNull Response<OwOFile> response) {
+            OwOFile file = response.body();
+            byte[] key = body.hash();
+
+            if(response.isSuccessful() && file != null && key != null) {
+                try {
+                    index.put(key, file);
+                } catch (IOException | IllegalArgumentException ignored) {
+                    // the index is only a shortcut, failing to update it should not fail the upload
+                }
+            }
+
+            return response;
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public Call<OwOFile> clone() {
+            return new DedupCall(delegate.clone(), index, body, executor, uploadUrl);
+        }
+    }
+
+    /**
+     * {@link ForwardingCall} which closes a resource once its call has completed, failed or was canceled
+     */
+    private static class ClosingCall<T> extends ForwardingCall<T> {
+
+        @NotNull private final Closeable closeable;
+
+        ClosingCall(@NotNull Call<T> delegate, @NotNull Closeable closeable) {
+            super(delegate);
+            this.closeable = closeable;
+        }
+
+        @NotNull
+        @Override
+        Response<T> onResponse(@NotNull Response<T> response) {
+            return response;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            try {
+                return super.execute();
+            } finally {
+                closeQuietly(closeable);
+            }
+        }
+
+        @Override
+        public void enqueue(@NotNull final Callback<T> callback) {
+            super.enqueue(new Callback<T>() {
+                @Override
+                public void onResponse(Call<T> call, Response<T> response) {
+                    closeQuietly(closeable);
+                    callback.onResponse(call, response);
+                }
+
+                @Override
+                public void onFailure(Call<T> call, Throwable t) {
+                    closeQuietly(closeable);
+                    callback.onFailure(call, t);
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            super.cancel();
+            closeQuietly(closeable);
+        }
+
+        @Override
+        public Call<T> clone() {
+            return new ClosingCall<>(delegate.clone(), closeable);
+        }
+    }
+
+    /**
+     * {@link FanOutCall.Branch} shortening a URL which appears at one or more indices
+     */
+    private static class ShortenBranch extends FanOutCall.Branch<String, String> {
+
+        ShortenBranch(@NotNull int[] indices, @NotNull Call<String> call) {
+            super(indices, call);
+        }
+
+        ShortenBranch(@NotNull int[] indices, @NotNull Throwable throwable) {
+            super(indices, throwable);
+        }
+
+        @Override
+        void succeed(@NotNull String body, @NotNull AtomicReferenceArray<OwOResult<String>> results) {
+            for (int index : indices) {
+                results.set(index, OwOResult.success(body));
+            }
+        }
+
+        @NotNull
+        @Override
+        FanOutCall.Branch<String, String> copy() {
+            return call == null ? new ShortenBranch(indices, throwable) : new ShortenBranch(indices, call.clone());
+        }
+    }
+
+    /**
+     * {@link FanOutCall.Branch} uploading several files in a single request
+     */
+    private static class UploadBranch extends FanOutCall.Branch<List<OwOFile>, OwOFile> {
+
+        UploadBranch(@NotNull int[] indices, @NotNull Call<List<OwOFile>> call, long bytes) {
+            super(indices, call, bytes);
+        }
+
+        UploadBranch(@NotNull int[] indices, @NotNull Throwable throwable) {
+            super(indices, throwable);
+        }
+
+        @Override
+        void succeed(@NotNull List<OwOFile> body, @NotNull AtomicReferenceArray<OwOResult<OwOFile>> results) {
+            if(body.size() != indices.length) {
+                fail(new IOException(String.format("expected %d files in response, got %d", indices.length, body.size())), results);
+                return;
+            }
+
+            for (int i = 0; i < indices.length; i++) {
+                results.set(indices[i], OwOResult.success(body.get(i)));
+            }
+        }
+
+        @NotNull
+        @Override
+        FanOutCall.Branch<List<OwOFile>, OwOFile> copy() {
+            return call == null ? new UploadBranch(indices, throwable) : new UploadBranch(indices, call.clone(), weight);
+        }
+    }
+
     public static class Builder {
 
         @Nullable String key;
@@ -270,6 +1053,18 @@ public class OwO {
         @Nullable String uploadUrl;
         @Nullable String shortenUrl;
 
+        @Nullable OwODedupIndex dedupIndex;
+        @Nullable OwOShortenCache shortenCache;
+
+        @Nullable OwOTransport transport;
+        @Nullable OwORateLimiter rateLimiter;
+        @Nullable OwORetryPolicy retryPolicy;
+        @Nullable OwOMetrics metrics;
+        @Nullable OwOLoadBalancer loadBalancer;
+        @Nullable OwOKeyPool keyPool;
+
+        boolean fastStart;
+
         /**
          * Set OwO API key
          * @param key OwO API key
@@ -281,6 +1076,18 @@ public class OwO {
             return this;
         }
 
+        /**
+         * Set key pool, requests are spread over its keys instead of using a single key
+         * and the key set with {@link Builder#setKey(String)} is ignored
+         * @param keyPool pool of OwO API keys, can be shared between instances
+         * @return instance of builder
+         */
+        public Builder setKeyPool(@NotNull OwOKeyPool keyPool) {
+            this.keyPool = keyPool;
+
+            return this;
+        }
+
         /**
          * Set API endpoint
          * @param endpoint endpoint URL
@@ -292,6 +1099,32 @@ public class OwO {
             return this;
         }
 
+        /**
+         * Set several API endpoints, requests are spread over them by a {@link OwOLoadBalancer} with default settings.
+         * The endpoint set with {@link Builder#setEndpoint(String)} is ignored
+         * @param endpoints endpoints, the first one is the primary endpoint
+         * @return instance of builder
+         *
+         * @throws IllegalArgumentException if {@code endpoints} is empty
+         */
+        public Builder setEndpoints(@NotNull List<OwOEndpoint> endpoints) {
+            this.loadBalancer = new OwOLoadBalancer.Builder().addEndpoints(endpoints).build();
+
+            return this;
+        }
+
+        /**
+         * Set load balancer, requests are spread over its endpoints.
+         * The endpoint set with {@link Builder#setEndpoint(String)} is ignored
+         * @param loadBalancer load balancer, can be shared between instances
+         * @return instance of builder
+         */
+        public Builder setLoadBalancer(@NotNull OwOLoadBalancer loadBalancer) {
+            this.loadBalancer = loadBalancer;
+
+            return this;
+        }
+
         /**
          * Set upload url
          * @param uploadUrl upload url
@@ -314,18 +1147,102 @@ public class OwO {
             return this;
         }
 
+        /**
+         * Set dedup index, files and data which are found in the index are not uploaded again.
+         * Only uploads of files, {@code byte[]}s, {@link ByteBuffer}s and strings are looked up, when the action runs,
+         * and stored under the hash of the bytes which were sent
+         * @param dedupIndex index of previously uploaded content
+         * @return instance of builder
+         */
+        public Builder setDedupIndex(@NotNull OwODedupIndex dedupIndex) {
+            this.dedupIndex = dedupIndex;
+
+            return this;
+        }
+
+        /**
+         * Set shorten cache, URLs which were shortened recently are answered from the cache
+         * and concurrent calls for the same URL share a single request
+         * @param shortenCache cache of shortened URLs, can be shared between instances
+         * @return instance of builder
+         */
+        public Builder setShortenCache(@NotNull OwOShortenCache shortenCache) {
+            this.shortenCache = shortenCache;
+
+            return this;
+        }
+
+        /**
+         * Set transport, defaults to {@link OwOTransport#getDefault()} which is shared by all instances without a transport
+         * @param transport transport whose connection pool and dispatcher are used
+         * @return instance of builder
+         */
+        public Builder setTransport(@NotNull OwOTransport transport) {
+            this.transport = transport;
+
+            return this;
+        }
+
+        /**
+         * Set rate limiter, requests wait for the limiter instead of failing when the API is busy
+         * @param rateLimiter rate limiter, can be shared between instances using the same key
+         * @return instance of builder
+         */
+        public Builder setRateLimiter(@NotNull OwORateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+
+            return this;
+        }
+
+        /**
+         * Set retry policy, transient failures are retried instead of being passed to the caller
+         * and shorten requests are hedged when the policy enables it
+         * @param retryPolicy retry policy, can be shared between instances
+         * @return instance of builder
+         */
+        public Builder setRetryPolicy(@NotNull OwORetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+
+            return this;
+        }
+
+        /**
+         * Set metrics, the timings and transferred bytes of every call are recorded per endpoint.
+         * No metrics are recorded by default
+         * @param metrics metrics to record calls in, can be shared between instances
+         * @return instance of builder
+         */
+        public Builder setMetrics(@NotNull OwOMetrics metrics) {
+            this.metrics = metrics;
+
+            return this;
+        }
+
+        /**
+         * Set whether requests are sent by a service written directly on OkHttp instead of one created by Retrofit,
+         * defaults to false. Both behave the same, but the direct service needs no reflection and loads far fewer classes,
+         * which makes the first request of a short-lived process faster
+         * @param fastStart true to use the service written on OkHttp
+         * @return instance of builder
+         */
+        public Builder setFastStart(boolean fastStart) {
+            this.fastStart = fastStart;
+
+            return this;
+        }
+
         /**
          * Build current builder
          * @return OwO class with properties from current builder
          *
-         * @throws IllegalArgumentException when key is not set or null
+         * @throws IllegalArgumentException when neither a key nor a key pool is set
          */
         public OwO build() {
-            if(key == null) {
+            if(key == null && keyPool == null) {
                 throw new IllegalArgumentException("key cannot be null!");
             }
 
-            return new OwO(key, endpoint, uploadUrl, shortenUrl);
+            return new OwO(this);
         }
     }
 }
@@ -18,6 +18,15 @@ import retrofit2.Callback;
 import retrofit2.HttpException;
 import retrofit2.Response;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class OwOAction<T> {
 
@@ -32,6 +41,14 @@ public class OwOAction<T> {
         this.throwable = throwable;
     }
 
+    /**
+     * @return underlying call, null when this action failed before a call could be created
+     */
+    @Nullable
+    Call<T> getCall() {
+        return call;
+    }
+
     /**
      * Execute {@link OwOAction} of type {@link T} in an asynchronous manner
      *
@@ -83,6 +100,99 @@ public class OwOAction<T> {
         call.enqueue(callback);
     }
 
+    /**
+     * Execute {@link OwOAction} of type {@link T} in an asynchronous manner, without blocking or an extra thread hop.
+     * Cancelling the returned future cancels the underlying call, but cancelling a stage derived from it does not.
+     *
+     * @return future which completes with the response of type {@link T}, or exceptionally when an error occurred
+     */
+    public CompletableFuture<T> executeAsync() {
+        if(this.throwable != null) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(this.throwable);
+            return future;
+        }
+
+        if(this.call == null) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("call and throwable are null!"));
+            return future;
+        }
+
+        final Call<T> call = this.call;
+        final CompletableFuture<T> future = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                call.cancel();
+                return cancelled;
+            }
+        };
+
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> result) {
+                if(result.isSuccessful()) {
+                    future.complete(result.body());
+                } else {
+                    future.completeExceptionally(new HttpException(result));
+                }
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Execute all {@code actions} with at most {@code maxConcurrency} of them running at once.
+     * When an action fails, no further actions are started and the running ones are cancelled
+     *
+     * @param actions actions to execute
+     * @param maxConcurrency maximum amount of actions running at once
+     * @param <T> type of response
+     * @return future which completes with the responses in the same order as {@code actions}, or exceptionally with the first error
+     *
+     * @throws IllegalArgumentException when {@code maxConcurrency} is not positive
+     */
+    public static <T> CompletableFuture<List<T>> all(@NotNull Collection<? extends OwOAction<T>> actions, int maxConcurrency) {
+        final CompletableFuture<List<T>> future = new CompletableFuture<>();
+
+        new Combiner<T>(actions, maxConcurrency, true).start().whenComplete((results, throwable) -> {
+            if(throwable != null) {
+                future.completeExceptionally(throwable);
+                return;
+            }
+
+            List<T> values = new ArrayList<>(results.size());
+            for (OwOResult<T> result : results) {
+                values.add(result.getValue());
+            }
+
+            future.complete(values);
+        });
+
+        return future;
+    }
+
+    /**
+     * Execute all {@code actions} with at most {@code maxConcurrency} of them running at once, a failing action does not affect the others
+     *
+     * @param actions actions to execute
+     * @param maxConcurrency maximum amount of actions running at once
+     * @param <T> type of response
+     * @return future which completes with a result for every action, in the same order as {@code actions}
+     *
+     * @throws IllegalArgumentException when {@code maxConcurrency} is not positive
+     */
+    public static <T> CompletableFuture<List<OwOResult<T>>> allResults(@NotNull Collection<? extends OwOAction<T>> actions, int maxConcurrency) {
+        return new Combiner<T>(actions, maxConcurrency, false).start();
+    }
+
     /**
      * Execute {@link OwOAction} of type {@link T} on the current thread
      * @return response of type {@link T}
@@ -104,4 +214,98 @@ public class OwOAction<T> {
             throw new HttpException(response);
         }
     }
+
+    /**
+     * Runs a collection of actions with bounded concurrency
+     *
+     * @param <T> type of response
+     */
+    private static class Combiner<T> {
+
+        @NotNull private final List<OwOAction<T>> actions;
+        private final int maxConcurrency;
+        private final boolean failFast;
+
+        @NotNull private final AtomicReferenceArray<OwOResult<T>> results;
+        @NotNull private final Queue<CompletableFuture<T>> running = new ConcurrentLinkedQueue<>();
+        @NotNull private final CompletableFuture<List<OwOResult<T>>> future = new CompletableFuture<>();
+
+        @NotNull private final AtomicInteger inFlight = new AtomicInteger();
+        @NotNull private final AtomicInteger remaining;
+        @NotNull private final AtomicInteger wip = new AtomicInteger();
+        private int next;
+
+        Combiner(@NotNull Collection<? extends OwOAction<T>> actions, int maxConcurrency, boolean failFast) {
+            if(maxConcurrency <= 0) {
+                throw new IllegalArgumentException("maxConcurrency must be positive!");
+            }
+
+            this.actions = new ArrayList<>(actions);
+            this.maxConcurrency = maxConcurrency;
+            this.failFast = failFast;
+            this.results = new AtomicReferenceArray<>(this.actions.size());
+            this.remaining = new AtomicInteger(this.actions.size());
+        }
+
+        @NotNull
+        CompletableFuture<List<OwOResult<T>>> start() {
+            if(actions.isEmpty()) {
+                future.complete(new ArrayList<OwOResult<T>>());
+            } else {
+                drain();
+            }
+
+            return future;
+        }
+
+        /**
+         * Start actions until {@link Combiner#maxConcurrency} are running, actions completing during this loop only
+         * schedule another pass instead of recursing
+         */
+        private void drain() {
+            if(wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            do {
+                while (!future.isDone() && next < actions.size() && inFlight.get() < maxConcurrency) {
+                    inFlight.incrementAndGet();
+                    launch(next++);
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private void launch(final int index) {
+            final CompletableFuture<T> action = actions.get(index).executeAsync();
+            running.add(action);
+
+            action.whenComplete((value, throwable) -> {
+                running.remove(action);
+                results.set(index, throwable == null ? OwOResult.success(value) : OwOResult.<T>failure(throwable));
+
+                if(throwable != null && failFast) {
+                    if(future.completeExceptionally(throwable)) {
+                        for (CompletableFuture<T> other : running) {
+                            other.cancel(true);
+                        }
+                    }
+
+                    return;
+                }
+
+                if(remaining.decrementAndGet() == 0) {
+                    List<OwOResult<T>> list = new ArrayList<>(results.length());
+                    for (int i = 0; i < results.length(); i++) {
+                        list.add(results.get(i));
+                    }
+
+                    future.complete(list);
+                    return;
+                }
+
+                inFlight.decrementAndGet();
+                drain();
+            });
+        }
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Timings, transferred bytes and outcome of a single HTTP call. Phases which did not happen, for example DNS
+ * and connecting when a pooled connection was reused, have a duration of {@code -1}. When a call is retried,
+ * the durations and bytes of all attempts are added up.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwOCallMetrics {
+
+    @NotNull private final String endpoint;
+    @NotNull private final String method;
+
+    private final long dnsNanos;
+    private final long connectNanos;
+    private final long tlsNanos;
+    private final long requestNanos;
+    private final long serverNanos;
+    private final long responseNanos;
+    private final long totalNanos;
+
+    private final long bytesSent;
+    private final long bytesReceived;
+
+    private final int code;
+    @Nullable private final IOException throwable;
+
+    OwOCallMetrics(@NotNull String endpoint, @NotNull String method, long dnsNanos, long connectNanos, long tlsNanos,
+                   long requestNanos, long serverNanos, long responseNanos, long totalNanos,
+                   long bytesSent, long bytesReceived, int code, @Nullable IOException throwable) {
+        this.endpoint = endpoint;
+        this.method = method;
+        this.dnsNanos = dnsNanos;
+        this.connectNanos = connectNanos;
+        this.tlsNanos = tlsNanos;
+        this.requestNanos = requestNanos;
+        this.serverNanos = serverNanos;
+        this.responseNanos = responseNanos;
+        this.totalNanos = totalNanos;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.code = code;
+        this.throwable = throwable;
+    }
+
+    /**
+     * @return path of the request, for example {@code /upload/pomf}
+     */
+    @NotNull
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return HTTP method of the request
+     */
+    @NotNull
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return time spent resolving the host name, or {@code -1}
+     */
+    public long getDnsNanos() {
+        return dnsNanos;
+    }
+
+    /**
+     * @return time spent connecting, including the TLS handshake, or {@code -1}
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * @return time spent on the TLS handshake, or {@code -1}
+     */
+    public long getTlsNanos() {
+        return tlsNanos;
+    }
+
+    /**
+     * @return time spent writing the request headers and body, or {@code -1}
+     */
+    public long getRequestNanos() {
+        return requestNanos;
+    }
+
+    /**
+     * @return time between writing the request and receiving the response headers, or {@code -1}
+     */
+    public long getServerNanos() {
+        return serverNanos;
+    }
+
+    /**
+     * @return time spent reading the response headers and body, or {@code -1}
+     */
+    public long getResponseNanos() {
+        return responseNanos;
+    }
+
+    /**
+     * @return time between starting and ending the call
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return amount of request body bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return amount of response body bytes received
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return HTTP status code of the last response, or {@code -1} if no response was received
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return exception the call failed with, or {@code null}
+     */
+    @Nullable
+    public IOException getThrowable() {
+        return throwable;
+    }
+
+    /**
+     * @return {@code true} if the call completed with a 2xx response
+     */
+    public boolean isSuccessful() {
+        return throwable == null && code >= 200 && code < 300;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OwOCallMetrics{%s %s, code=%d, total=%dns, dns=%dns, connect=%dns, tls=%dns, request=%dns, server=%dns, response=%dns, sent=%d, received=%d}",
+                method, endpoint, code, totalNanos, dnsNanos, connectNanos, tlsNanos, requestNanos, serverNanos, responseNanos, bytesSent, bytesReceived);
+    }
+}
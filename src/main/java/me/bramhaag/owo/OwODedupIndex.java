@@ -0,0 +1,350 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.HashingSink;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * On-disk index of uploaded content, mapping the SHA-1 of a file to the {@link OwOFile} it was uploaded as, including
+ * the upload URL of the endpoint which served it.
+ *
+ * Entries are appended to a memory-mapped file which survives restarts. The heap only holds an open-addressing
+ * table of record offsets (8 to 16 bytes per entry), so lookups are O(1) and do not allocate unless they hit.
+ * The index file is limited to 2 GiB, which is enough for tens of millions of entries.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwODedupIndex implements Closeable {
+
+    /**
+     * Length of a key in bytes
+     */
+    public static final int KEY_LENGTH = 20;
+
+    private static final int MAGIC = 0x4F574F44;
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 16;
+    private static final int END_OFFSET = 8;
+
+    private static final int INITIAL_CAPACITY = 1024 * 1024;
+    private static final int MAX_STRING_LENGTH = 0xFFFF;
+
+    @NotNull private final RandomAccessFile file;
+    @NotNull private final FileChannel channel;
+    @NotNull private MappedByteBuffer buffer;
+
+    /**
+     * Amount of strings in a record, indexes of version 1 do not store the upload URL
+     */
+    private final int strings;
+
+    private int end;
+    private int count;
+    @NotNull private int[] table = new int[1024];
+
+    /**
+     * Open an index, creating it when {@code file} does not exist
+     * @param file index file
+     *
+     * @throws IOException when the file cannot be opened or is not an index
+     */
+    public OwODedupIndex(@NotNull File file) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+
+        try {
+            boolean created = channel.size() == 0;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_CAPACITY));
+
+            if(created) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(END_OFFSET, HEADER_LENGTH);
+            } else if(buffer.getInt(0) != MAGIC || buffer.getInt(4) < 1 || buffer.getInt(4) > VERSION) {
+                throw new IOException(file + " is not a dedup index");
+            }
+
+            this.strings = buffer.getInt(4) == 1 ? 3 : 4;
+
+            long length = buffer.getLong(END_OFFSET);
+            if(length < HEADER_LENGTH || length > buffer.capacity()) {
+                throw new IOException(file + " is corrupt");
+            }
+
+            this.end = (int) length;
+
+            for (int offset = HEADER_LENGTH; offset < end; ) {
+                int next = next(offset);
+                if(next == -1) {
+                    throw new IOException(file + " is corrupt");
+                }
+
+                insert(offset);
+                offset = next;
+            }
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Look up a file by key
+     * @param key SHA-1 of the content
+     * @return file which was uploaded with the same content, with its full URL set when the index stores its upload URL,
+     * or null when there is none
+     */
+    @Nullable
+    public synchronized OwOFile get(@NotNull byte[] key) {
+        checkKey(key);
+
+        int mask = table.length - 1;
+        for (int slot = slot(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if(matches(table[slot], key)) {
+                return read(table[slot]);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Add a file to the index, replacing an existing entry with the same key
+     * @param key SHA-1 of the content
+     * @param file uploaded file
+     *
+     * @throws IOException when the index cannot grow any further
+     * @throws IllegalArgumentException when a field of {@code file} is too long to be stored
+     */
+    public synchronized void put(@NotNull byte[] key, @NotNull OwOFile file) throws IOException {
+        checkKey(key);
+
+        byte[] hash = encode(file.getHash());
+        byte[] name = encode(file.getName());
+        byte[] url = encode(file.getUrl());
+        byte[] uploadUrl = strings > 3 ? encode(file.getUploadUrl()) : new byte[0];
+
+        long length = (long) KEY_LENGTH + 8 + 2 * strings + hash.length + name.length + url.length + uploadUrl.length;
+        if(end + length > Integer.MAX_VALUE) {
+            throw new IOException("dedup index is full");
+        }
+
+        ensureCapacity((int) (end + length));
+
+        int offset = end;
+        buffer.position(offset);
+        buffer.put(key);
+        buffer.putLong(file.getSize());
+        putString(hash);
+        putString(name);
+        putString(url);
+
+        if(strings > 3) {
+            putString(uploadUrl);
+        }
+
+        end = buffer.position();
+        buffer.putLong(END_OFFSET, end);
+
+        insert(offset);
+    }
+
+    /**
+     * @return amount of keys in the index
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Write all changes to disk
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    /**
+     * Compute the key of a replayable body by writing it into a digest
+     * @param body content
+     * @return SHA-1 of the bytes written by {@code body}
+     *
+     * @throws IOException when {@code body} cannot be written
+     */
+    @NotNull
+    static byte[] key(@NotNull RequestBody body) throws IOException {
+        HashingSink hashingSink = HashingSink.sha1(Okio.blackhole());
+
+        try (BufferedSink sink = Okio.buffer(hashingSink)) {
+            body.writeTo(sink);
+        }
+
+        return hashingSink.hash().toByteArray();
+    }
+
+    private void insert(int offset) {
+        int mask = table.length - 1;
+        int slot = slot(offset) & mask;
+
+        while (table[slot] != 0) {
+            if(sameKey(table[slot], offset)) {
+                table[slot] = offset;
+                return;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = offset;
+
+        if(++count * 2 > table.length) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        int[] old = table;
+        table = new int[old.length * 2];
+
+        int mask = table.length - 1;
+        for (int offset : old) {
+            if(offset == 0) {
+                continue;
+            }
+
+            int slot = slot(offset) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = offset;
+        }
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        if(required <= buffer.capacity()) {
+            return;
+        }
+
+        long capacity = buffer.capacity();
+        while (capacity < required) {
+            capacity *= 2;
+        }
+
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+    }
+
+    private boolean matches(int offset, @NotNull byte[] key) {
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            if(buffer.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean sameKey(int a, int b) {
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            if(buffer.get(a + i) != buffer.get(b + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * SHA-1 is already uniformly distributed, so its first bytes can be used as hash code
+     */
+    private static int slot(@NotNull byte[] key) {
+        return (key[0] & 0xFF) << 24 | (key[1] & 0xFF) << 16 | (key[2] & 0xFF) << 8 | (key[3] & 0xFF);
+    }
+
+    private int slot(int offset) {
+        return buffer.getInt(offset);
+    }
+
+    /**
+     * @return offset of the record after the record at {@code offset}, or -1 when the record does not end before {@link #end}
+     */
+    private int next(int offset) {
+        long position = (long) offset + KEY_LENGTH + 8;
+        for (int i = 0; i < strings; i++) {
+            if(position + 2 > end) {
+                return -1;
+            }
+
+            position += 2 + (buffer.getShort((int) position) & 0xFFFF);
+        }
+
+        return position > end ? -1 : (int) position;
+    }
+
+    @NotNull
+    private OwOFile read(int offset) {
+        long size = buffer.getLong(offset + KEY_LENGTH);
+
+        int position = offset + KEY_LENGTH + 8;
+        String[] values = new String[strings];
+        for (int i = 0; i < values.length; i++) {
+            byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = buffer.get(position + 2 + j);
+            }
+
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += 2 + bytes.length;
+        }
+
+        OwOFile file = new OwOFile(values[0], values[1], values[2], size);
+        return values.length > 3 && !values[3].isEmpty() ? file.setFullUrl(values[3]) : file;
+    }
+
+    private void putString(@NotNull byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    @NotNull
+    private static byte[] encode(@Nullable String string) {
+        byte[] bytes = string == null ? new byte[0] : string.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("value is too long to be indexed: " + string);
+        }
+
+        return bytes;
+    }
+
+    private static void checkKey(@NotNull byte[] key) {
+        if(key.length != KEY_LENGTH) {
+            throw new IllegalArgumentException("key must be " + KEY_LENGTH + " bytes long");
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.HttpUrl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API endpoint, such as a self-hosted mirror, together with the upload and shorten URLs of the files and links it creates.
+ *
+ * Every endpoint keeps track of its latency, the amount of requests it is serving and whether it has been ejected by
+ * an {@link OwOLoadBalancer}, so an endpoint belongs to a single load balancer.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwOEndpoint {
+
+    @NotNull private final HttpUrl endpoint;
+    @Nullable private final String uploadUrl;
+    @Nullable private final String shortenUrl;
+
+    private double latencyNanos;
+    private long latencyStamp;
+    private int outstanding;
+
+    private int consecutiveFailures;
+    private int ejections;
+    private long ejectedUntil;
+    private boolean ejected;
+
+    /**
+     * @param endpoint endpoint URL
+     * @param uploadUrl URL which is put in front of the keys of files uploaded to this endpoint, the upload URL of the {@link OwO} when null
+     * @param shortenUrl shorten URL used for links shortened by this endpoint, the shorten URL of the {@link OwO} when null
+     *
+     * @throws IllegalArgumentException if {@code endpoint} is not a http or https URL
+     */
+    public OwOEndpoint(@NotNull String endpoint, @Nullable String uploadUrl, @Nullable String shortenUrl) {
+        HttpUrl url = HttpUrl.parse(endpoint.endsWith("/") ? endpoint : endpoint + "/");
+        if(url == null) {
+            throw new IllegalArgumentException("endpoint must be a http or https URL!");
+        }
+
+        this.endpoint = url;
+        this.uploadUrl = uploadUrl;
+        this.shortenUrl = shortenUrl;
+    }
+
+    /**
+     * @return endpoint URL, ending with a slash
+     */
+    @NotNull
+    public String getEndpoint() {
+        return endpoint.toString();
+    }
+
+    /**
+     * @return upload URL of this endpoint, or null when the upload URL of the {@link OwO} is used
+     */
+    @Nullable
+    public String getUploadUrl() {
+        return uploadUrl;
+    }
+
+    /**
+     * @return shorten URL of this endpoint, or null when the shorten URL of the {@link OwO} is used
+     */
+    @Nullable
+    public String getShortenUrl() {
+        return shortenUrl;
+    }
+
+    /**
+     * @param unit unit of the latency
+     * @return moving average of recent latencies, biased towards peaks
+     */
+    public synchronized long getLatency(@NotNull TimeUnit unit) {
+        return unit.convert((long) latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return amount of requests which are waiting for a response from this endpoint
+     */
+    public synchronized int getOutstanding() {
+        return outstanding;
+    }
+
+    /**
+     * @return true when this endpoint is ejected because it kept failing
+     */
+    public boolean isEjected() {
+        return isEjected(System.nanoTime());
+    }
+
+    @NotNull
+    HttpUrl url() {
+        return endpoint;
+    }
+
+    synchronized boolean isEjected(long now) {
+        return ejected && now - ejectedUntil < 0;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at which the ejection of this endpoint ends, only meaningful while it is ejected
+     */
+    synchronized long ejectedUntil() {
+        return ejectedUntil;
+    }
+
+    /**
+     * @param now current {@link System#nanoTime()}
+     * @param decayNanos time after which old latencies have decayed to about a third of their weight
+     * @return cost of sending another request to this endpoint, lower is better. The latency keeps decaying while
+     *         no requests complete, so an endpoint which was slow once is tried again later
+     */
+    synchronized double cost(long now, long decayNanos) {
+        return (latencyNanos * decay(now, decayNanos) + 1) * (outstanding + 1);
+    }
+
+    synchronized void start() {
+        outstanding++;
+    }
+
+    synchronized void finish() {
+        outstanding--;
+    }
+
+    /**
+     * Record a successful request, which reinstates the endpoint when it was ejected
+     * @param nanos latency of the request, or -1 when it should not be recorded
+     * @param now current {@link System#nanoTime()}
+     * @param decayNanos time after which old latencies have decayed to about a third of their weight
+     */
+    synchronized void succeed(long nanos, long now, long decayNanos) {
+        if(nanos >= 0) {
+            double weight = decay(now, decayNanos);
+            latencyNanos = nanos > latencyNanos ? nanos : latencyNanos * weight + nanos * (1 - weight);
+            latencyStamp = now;
+        }
+
+        consecutiveFailures = 0;
+        ejections = 0;
+        ejected = false;
+    }
+
+    /**
+     * Record a failed request, which ejects the endpoint after {@code maxFailures} consecutive failures and extends
+     * the ejection while it is ejected, each ejection lasting twice as long as the previous one
+     * @param now current {@link System#nanoTime()}
+     * @return true when the endpoint was ejected
+     */
+    synchronized boolean fail(long now, int maxFailures, long baseEjectionNanos, long maxEjectionNanos) {
+        if(++consecutiveFailures < maxFailures && !ejected) {
+            return false;
+        }
+
+        long duration = baseEjectionNanos << Math.min(ejections++, 30);
+        if(duration <= 0 || duration > maxEjectionNanos) {
+            duration = maxEjectionNanos;
+        }
+
+        ejected = true;
+        ejectedUntil = now + duration;
+        return true;
+    }
+
+    /**
+     * Reinstate the endpoint after a successful health check, an endpoint which is not ejected is left alone
+     */
+    synchronized void reinstate() {
+        if(ejected) {
+            consecutiveFailures = 0;
+            ejected = false;
+        }
+    }
+
+    private double decay(long now, long decayNanos) {
+        return latencyStamp == 0 ? 0 : Math.exp(-(double) Math.max(0, now - latencyStamp) / decayNanos);
+    }
+
+    @Override
+    public String toString() {
+        return endpoint.toString();
+    }
+}
@@ -35,22 +35,50 @@ public class OwOFile {
      */
     private String fullUrl;
 
+    /**
+     * URL displayed before the key in the full URL, which is the upload URL of the endpoint which served the file
+     */
+    private String uploadUrl;
+
     /**
      * Size of file
      */
     private long size;
 
+    OwOFile() {
+    }
+
+    /**
+     * @param hash hash of file
+     * @param name original name of file
+     * @param url key of URL
+     * @param size size of file
+     */
+    OwOFile(String hash, String name, String url, long size) {
+        this.hash = hash;
+        this.name = name;
+        this.url = url;
+        this.size = size;
+    }
+
     /**
      * Set fullUrl
      * @param uploadUrl URL to display before key
      */
     OwOFile setFullUrl(String uploadUrl) {
-        uploadUrl = uploadUrl.endsWith("/") ? uploadUrl : uploadUrl + "/";
-        fullUrl = uploadUrl + url;
+        this.uploadUrl = uploadUrl.endsWith("/") ? uploadUrl : uploadUrl + "/";
+        this.fullUrl = this.uploadUrl + url;
 
         return this;
     }
 
+    /**
+     * @return URL displayed before the key, or null when the full URL was not set
+     */
+    String getUploadUrl() {
+        return uploadUrl;
+    }
+
     public String getHash() {
         return hash;
     }
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of API keys, requests of an {@link OwO} using the pool are spread over its keys so they are not limited
+ * by the rate limit of a single key. All keys share the connection pool of the {@link OwO}.
+ *
+ * A key which gets a {@code 429 Too Many Requests} response cools down for the {@code Retry-After} of the response,
+ * or for a backoff doubling with every consecutive {@code 429}, and the request is sent again with another key when
+ * its body can be sent again. When every key is cooling down, requests use the key whose cool-down ends first.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwOKeyPool {
+
+    /**
+     * Order in which keys are used
+     */
+    public enum Strategy {
+        /**
+         * Use the keys one after another
+         */
+        ROUND_ROBIN,
+        /**
+         * Use the key which was throttled longest ago, keys which were never throttled are used one after another
+         */
+        LEAST_RECENTLY_THROTTLED
+    }
+
+    @NotNull private final List<Key> keys;
+    @NotNull private final Strategy strategy;
+
+    private final long baseCooldownNanos;
+    private final long maxCooldownNanos;
+
+    @NotNull private final AtomicInteger next = new AtomicInteger();
+
+    private OwOKeyPool(@NotNull Builder builder) {
+        List<Key> keys = new ArrayList<>(builder.keys.size());
+        for (String key : builder.keys) {
+            keys.add(new Key(key));
+        }
+
+        this.keys = Collections.unmodifiableList(keys);
+        this.strategy = builder.strategy;
+        this.baseCooldownNanos = builder.baseCooldownNanos;
+        this.maxCooldownNanos = builder.maxCooldownNanos;
+    }
+
+    /**
+     * @return keys of this pool with their usage, in the order they were added
+     */
+    @NotNull
+    public List<Key> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return strategy used to pick keys
+     */
+    @NotNull
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @param userAgent user agent which is added to every request
+     * @param budget retry policy whose budget pays for every request which is sent again with another key, or null
+     * @return interceptor adding a key from this pool to every request
+     */
+    @NotNull
+    Interceptor interceptor(@NotNull String userAgent, @Nullable OwORetryPolicy budget) {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request().newBuilder().header("User-Agent", userAgent).build();
+                boolean replayable = Requests.isReplayable(request);
+                List<Key> tried = new ArrayList<>(1);
+                Key key = select(tried, System.nanoTime());
+
+                while (true) {
+                    tried.add(key);
+
+                    HttpUrl url = request.url().newBuilder().setQueryParameter("key", key.key).build();
+                    Response response;
+
+                    key.start();
+                    try {
+                        response = chain.proceed(request.newBuilder().url(url).build());
+                    } catch (IOException | RuntimeException e) {
+                        key.finish(false);
+                        throw e;
+                    }
+
+                    if(response.code() != 429) {
+                        key.finish(true);
+                        return response;
+                    }
+
+                    long now = System.nanoTime();
+                    key.throttle(now, Requests.retryAfterNanos(response), baseCooldownNanos, maxCooldownNanos);
+
+                    if(!replayable || tried.size() >= keys.size() || chain.call().isCanceled()) {
+                        return response;
+                    }
+
+                    Key other = select(tried, now);
+                    if(other.isCoolingDown(now) || (budget != null && !budget.withdraw())) {
+                        return response;
+                    }
+
+                    Requests.closeQuietly(response);
+                    key = other;
+                }
+            }
+        };
+    }
+
+    /**
+     * Pick a key which is not cooling down
+     * @param tried keys which should not be picked
+     * @param now current {@link System#nanoTime()}
+     * @return key to use, the key whose cool-down ends first when all keys which were not tried are cooling down
+     */
+    @NotNull
+    private Key select(@NotNull List<Key> tried, long now) {
+        int offset = Math.floorMod(next.getAndIncrement(), keys.size());
+        Key selected = null;
+        Key fallback = null;
+
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get((offset + i) % keys.size());
+
+            if(tried.contains(key) && tried.size() < keys.size()) {
+                continue;
+            }
+
+            if(key.isCoolingDown(now)) {
+                if(fallback == null || key.cooldownUntil() - fallback.cooldownUntil() < 0) {
+                    fallback = key;
+                }
+            } else if(strategy == Strategy.ROUND_ROBIN) {
+                return key;
+            } else if(selected == null || key.lastThrottled() < selected.lastThrottled()) {
+                selected = key;
+            }
+        }
+
+        return selected != null ? selected : fallback;
+    }
+
+    /**
+     * API key of a {@link OwOKeyPool} with its usage
+     */
+    public static class Key {
+
+        @NotNull private final String key;
+
+        @NotNull private final LongAdder requests = new LongAdder();
+        @NotNull private final LongAdder throttled = new LongAdder();
+        @NotNull private final LongAdder failed = new LongAdder();
+        @NotNull private final AtomicInteger inFlight = new AtomicInteger();
+
+        private int consecutiveThrottles;
+        private boolean everThrottled;
+        private long throttledAt;
+        private long cooldownUntil;
+
+        Key(@NotNull String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return the API key
+         */
+        @NotNull
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return amount of requests sent with this key
+         */
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * @return amount of {@code 429} responses to requests with this key
+         */
+        public long getThrottled() {
+            return throttled.sum();
+        }
+
+        /**
+         * @return amount of requests with this key which failed without a response
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * @return amount of requests with this key which are waiting for a response
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * @return true when this key was throttled recently and is not used while other keys are available
+         */
+        public boolean isCoolingDown() {
+            return isCoolingDown(System.nanoTime());
+        }
+
+        synchronized boolean isCoolingDown(long now) {
+            return everThrottled && now - cooldownUntil < 0;
+        }
+
+        synchronized long cooldownUntil() {
+            return cooldownUntil;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} of the last {@code 429}, or {@link Long#MIN_VALUE} when the key was never throttled
+         */
+        synchronized long lastThrottled() {
+            return everThrottled ? throttledAt : Long.MIN_VALUE;
+        }
+
+        void start() {
+            requests.increment();
+            inFlight.incrementAndGet();
+        }
+
+        void finish(boolean responded) {
+            inFlight.decrementAndGet();
+
+            if(!responded) {
+                failed.increment();
+                return;
+            }
+
+            synchronized (this) {
+                consecutiveThrottles = 0;
+            }
+        }
+
+        /**
+         * Start a cool-down after a {@code 429} response
+         * @param now current {@link System#nanoTime()}
+         * @param retryAfterNanos {@code Retry-After} of the response, or -1 to back off instead
+         */
+        void throttle(long now, long retryAfterNanos, long baseCooldownNanos, long maxCooldownNanos) {
+            inFlight.decrementAndGet();
+            throttled.increment();
+
+            synchronized (this) {
+                long duration = retryAfterNanos;
+                if(duration < 0) {
+                    duration = baseCooldownNanos << Math.min(consecutiveThrottles, 30);
+                    if(duration <= 0 || duration > maxCooldownNanos) {
+                        duration = maxCooldownNanos;
+                    }
+                }
+
+                consecutiveThrottles++;
+                everThrottled = true;
+                throttledAt = now;
+                cooldownUntil = now + duration;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return key.length() <= 4 ? "****" : "****" + key.substring(key.length() - 4);
+        }
+    }
+
+    public static class Builder {
+
+        @NotNull final Set<String> keys = new LinkedHashSet<>();
+        @NotNull Strategy strategy = Strategy.ROUND_ROBIN;
+
+        long baseCooldownNanos = TimeUnit.SECONDS.toNanos(1);
+        long maxCooldownNanos = TimeUnit.MINUTES.toNanos(1);
+
+        /**
+         * Add an API key, adding a key twice has no effect
+         * @param key OwO API key
+         * @return instance of builder
+         */
+        public Builder addKey(@NotNull String key) {
+            this.keys.add(key);
+
+            return this;
+        }
+
+        /**
+         * Add API keys, adding a key twice has no effect
+         * @param keys OwO API keys
+         * @return instance of builder
+         */
+        public Builder addKeys(@NotNull Collection<String> keys) {
+            this.keys.addAll(keys);
+
+            return this;
+        }
+
+        /**
+         * Set order in which keys are used, defaults to {@link Strategy#ROUND_ROBIN}
+         * @param strategy strategy used to pick keys
+         * @return instance of builder
+         */
+        public Builder setStrategy(@NotNull Strategy strategy) {
+            this.strategy = strategy;
+
+            return this;
+        }
+
+        /**
+         * Set cool-down of throttled keys without a {@code Retry-After}, defaults to 1 second doubling up to 1 minute
+         * @param baseCooldown cool-down after the first {@code 429}
+         * @param maxCooldown longest cool-down
+         * @param unit unit of {@code baseCooldown} and {@code maxCooldown}
+         * @return instance of builder
+         */
+        public Builder setCooldown(long baseCooldown, long maxCooldown, @NotNull TimeUnit unit) {
+            this.baseCooldownNanos = unit.toNanos(baseCooldown);
+            this.maxCooldownNanos = unit.toNanos(maxCooldown);
+
+            return this;
+        }
+
+        /**
+         * Build current builder
+         * @return key pool with properties from current builder
+         *
+         * @throws IllegalArgumentException when no key was added or the cool-down is invalid
+         */
+        public OwOKeyPool build() {
+            if(keys.isEmpty()) {
+                throw new IllegalArgumentException("at least one key must be added!");
+            }
+
+            if(baseCooldownNanos <= 0 || maxCooldownNanos < baseCooldownNanos) {
+                throw new IllegalArgumentException("cooldowns must be positive and baseCooldown <= maxCooldown!");
+            }
+
+            return new OwOKeyPool(this);
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit2.Call;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads requests over several {@link OwOEndpoint}s, for example self-hosted mirrors of the API.
+ *
+ * Every request picks two random endpoints and goes to the one with the lowest moving average of its latency multiplied
+ * by the amount of requests it is already serving. Endpoints which fail several requests in a row, by throwing an
+ * {@link IOException} or answering with a {@code 5xx} status, are ejected for a while, each ejection lasting twice as
+ * long as the previous one. Health checks probe every endpoint periodically, reinstating ejected endpoints which answer again.
+ *
+ * A request which fails before the endpoint can have processed it, or which is idempotent, is sent to another endpoint
+ * when its body can be sent again. When every endpoint is ejected, requests go to the endpoint whose ejection ends first.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwOLoadBalancer implements Closeable {
+
+    @NotNull private final List<OwOEndpoint> endpoints;
+
+    private final int maxFailures;
+    private final long baseEjectionNanos;
+    private final long maxEjectionNanos;
+    private final long decayNanos;
+    private final int maxFailovers;
+
+    @NotNull private final String healthCheckPath;
+    private final long healthCheckIntervalNanos;
+
+    @Nullable private ScheduledExecutorService scheduler;
+    private boolean closed;
+
+    private OwOLoadBalancer(@NotNull Builder builder) {
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(builder.endpoints));
+        this.maxFailures = builder.maxFailures;
+        this.baseEjectionNanos = builder.baseEjectionNanos;
+        this.maxEjectionNanos = builder.maxEjectionNanos;
+        this.decayNanos = builder.decayNanos;
+        this.maxFailovers = builder.maxFailovers;
+        this.healthCheckPath = builder.healthCheckPath;
+        this.healthCheckIntervalNanos = builder.healthCheckIntervalNanos;
+    }
+
+    /**
+     * @return endpoints of this load balancer, the first one is the primary endpoint
+     */
+    @NotNull
+    public List<OwOEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Stop the health checks, requests are still spread over the endpoints afterwards
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+
+        if(scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Create an interceptor which routes requests for any of the endpoints, and start the health checks when they are not running yet
+     * @param client client used for health checks
+     * @param budget retry policy whose budget pays for every failover, or null
+     * @param failoverThrottled false when an outer layer already resends {@code 429}/{@code 503} responses
+     * @return interceptor routing requests
+     */
+    @NotNull
+    Interceptor interceptor(@NotNull OkHttpClient client, @Nullable OwORetryPolicy budget, boolean failoverThrottled) {
+        startHealthChecks(client);
+        return chain -> route(chain, budget, failoverThrottled);
+    }
+
+    /**
+     * Wrap an upload call so the full URL of every file uses the upload URL of the endpoint which served it
+     * @param call upload call returning an {@link OwOFile} or a {@link List} of them
+     * @param <T> type of response
+     * @return wrapped call
+     */
+    @NotNull
+    <T> Call<T> wrap(@NotNull Call<T> call) {
+        return new UploadUrlCall<>(call, this);
+    }
+
+    /**
+     * Find the endpoint a URL belongs to
+     * @param url URL of a request
+     * @return endpoint whose URL is the longest prefix of {@code url}, or null when there is none
+     */
+    @Nullable
+    OwOEndpoint find(@NotNull HttpUrl url) {
+        String value = url.toString();
+        OwOEndpoint match = null;
+
+        for (OwOEndpoint endpoint : endpoints) {
+            String prefix = endpoint.getEndpoint();
+            if(value.startsWith(prefix) && (match == null || prefix.length() > match.getEndpoint().length())) {
+                match = endpoint;
+            }
+        }
+
+        return match;
+    }
+
+    private Response route(@NotNull Interceptor.Chain chain, @Nullable OwORetryPolicy budget, boolean failoverThrottled) throws IOException {
+        Request request = chain.request();
+        OwOEndpoint origin = find(request.url());
+
+        if(origin == null) {
+            return chain.proceed(request);
+        }
+
+        boolean replayable = Requests.isReplayable(request);
+        boolean idempotent = OwORetryPolicy.isIdempotent(request.method());
+        List<OwOEndpoint> tried = new ArrayList<>(2);
+
+        while (true) {
+            long start = System.nanoTime();
+            OwOEndpoint endpoint = select(tried, start);
+            tried.add(endpoint);
+
+            Response response = null;
+            IOException failure = null;
+
+            endpoint.start();
+            try {
+                response = chain.proceed(rewrite(request, origin, endpoint));
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                endpoint.finish();
+            }
+
+            long now = System.nanoTime();
+            boolean canceled = chain.call().isCanceled();
+
+            if(!canceled) {
+                if(failure != null || response.code() >= 500) {
+                    endpoint.fail(now, maxFailures, baseEjectionNanos, maxEjectionNanos);
+                } else {
+                    endpoint.succeed(now - start, now, decayNanos);
+                }
+            }
+
+            boolean failover = !canceled && replayable && tried.size() <= maxFailovers && tried.size() < endpoints.size()
+                    && (failure != null ? OwORetryPolicy.isRetryable(failure, idempotent)
+                            : OwORetryPolicy.isRetryable(response, idempotent) && (failoverThrottled || !Requests.isThrottled(response)))
+                    && (budget == null || budget.withdraw());
+
+            if(!failover) {
+                if(failure != null) {
+                    throw failure;
+                }
+
+                return response;
+            }
+
+            Requests.closeQuietly(response);
+        }
+    }
+
+    /**
+     * Pick the cheaper of two random endpoints which are not ejected
+     * @param tried endpoints which should not be picked
+     * @param now current {@link System#nanoTime()}
+     * @return endpoint to send a request to, the endpoint whose ejection ends first when all endpoints are ejected
+     */
+    @NotNull
+    private OwOEndpoint select(@NotNull List<OwOEndpoint> tried, long now) {
+        List<OwOEndpoint> candidates = new ArrayList<>(endpoints.size());
+        OwOEndpoint fallback = null;
+
+        for (OwOEndpoint endpoint : endpoints) {
+            if(tried.contains(endpoint)) {
+                continue;
+            }
+
+            if(!endpoint.isEjected(now)) {
+                candidates.add(endpoint);
+            } else if(fallback == null || endpoint.ejectedUntil() - fallback.ejectedUntil() < 0) {
+                fallback = endpoint;
+            }
+        }
+
+        if(candidates.isEmpty()) {
+            return fallback;
+        }
+
+        if(candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if(second >= first) {
+            second++;
+        }
+
+        OwOEndpoint a = candidates.get(first);
+        OwOEndpoint b = candidates.get(second);
+        return a.cost(now, decayNanos) <= b.cost(now, decayNanos) ? a : b;
+    }
+
+    @NotNull
+    private static Request rewrite(@NotNull Request request, @NotNull OwOEndpoint origin, @NotNull OwOEndpoint endpoint) {
+        HttpUrl url = request.url();
+
+        if(endpoint != origin) {
+            url = endpoint.url().resolve(url.toString().substring(origin.getEndpoint().length()));
+        }
+
+        if(endpoint.getShortenUrl() != null && url.queryParameter("resultUrl") != null) {
+            url = url.newBuilder().setQueryParameter("resultUrl", endpoint.getShortenUrl()).build();
+        }
+
+        return url.equals(request.url()) ? request : request.newBuilder().url(url).build();
+    }
+
+    private synchronized void startHealthChecks(@NotNull OkHttpClient client) {
+        if(closed || scheduler != null || healthCheckIntervalNanos == 0) {
+            return;
+        }
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "OwO health check");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduler.scheduleWithFixedDelay(() -> check(client), healthCheckIntervalNanos, healthCheckIntervalNanos, TimeUnit.NANOSECONDS);
+        this.scheduler = scheduler;
+    }
+
+    private void check(@NotNull OkHttpClient client) {
+        for (final OwOEndpoint endpoint : endpoints) {
+            HttpUrl url = endpoint.url().resolve(healthCheckPath);
+            if(url == null) {
+                continue;
+            }
+
+            client.newCall(new Request.Builder().url(url).build()).enqueue(new okhttp3.Callback() {
+                @Override
+                public void onFailure(okhttp3.Call call, IOException e) {
+                    endpoint.fail(System.nanoTime(), maxFailures, baseEjectionNanos, maxEjectionNanos);
+                }
+
+                @Override
+                public void onResponse(okhttp3.Call call, Response response) {
+                    response.close();
+
+                    if(response.code() >= 500) {
+                        endpoint.fail(System.nanoTime(), maxFailures, baseEjectionNanos, maxEjectionNanos);
+                    } else {
+                        endpoint.reinstate();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * {@link ForwardingCall} which sets the full URL of uploaded files to the upload URL of the endpoint which served them
+     */
+    private static class UploadUrlCall<T> extends ForwardingCall<T> {
+
+        @NotNull private final OwOLoadBalancer balancer;
+
+        UploadUrlCall(@NotNull Call<T> delegate, @NotNull OwOLoadBalancer balancer) {
+            super(delegate);
+            this.balancer = balancer;
+        }
+
+        @NotNull
+        @Override
+        retrofit2.Response<T> onResponse(@NotNull retrofit2.Response<T> response) {
+            OwOEndpoint endpoint = balancer.find(response.raw().request().url());
+            String uploadUrl = endpoint == null ? null : endpoint.getUploadUrl();
+            T body = response.body();
+
+            if(uploadUrl == null || body == null) {
+                return response;
+            }
+
+            if(body instanceof OwOFile) {
+                ((OwOFile) body).setFullUrl(uploadUrl);
+            } else if(body instanceof List) {
+                for (Object file : (List<?>) body) {
+                    ((OwOFile) file).setFullUrl(uploadUrl);
+                }
+            }
+
+            return response;
+        }
+
+        @Override
+        public Call<T> clone() {
+            return new UploadUrlCall<>(delegate.clone(), balancer);
+        }
+    }
+
+    public static class Builder {
+
+        @NotNull final List<OwOEndpoint> endpoints = new ArrayList<>();
+
+        int maxFailures = 3;
+        long baseEjectionNanos = TimeUnit.SECONDS.toNanos(10);
+        long maxEjectionNanos = TimeUnit.MINUTES.toNanos(5);
+        long decayNanos = TimeUnit.SECONDS.toNanos(10);
+        int maxFailovers = 2;
+
+        @NotNull String healthCheckPath = "";
+        long healthCheckIntervalNanos = TimeUnit.SECONDS.toNanos(10);
+
+        /**
+         * Add an endpoint, the first endpoint is the primary endpoint
+         * @param endpoint endpoint to add
+         * @return instance of builder
+         */
+        public Builder addEndpoint(@NotNull OwOEndpoint endpoint) {
+            this.endpoints.add(endpoint);
+
+            return this;
+        }
+
+        /**
+         * Add endpoints, the first endpoint is the primary endpoint
+         * @param endpoints endpoints to add
+         * @return instance of builder
+         */
+        public Builder addEndpoints(@NotNull Collection<OwOEndpoint> endpoints) {
+            this.endpoints.addAll(endpoints);
+
+            return this;
+        }
+
+        /**
+         * Set ejection, defaults to ejecting an endpoint after 3 consecutive failures for 10 seconds doubling up to 5 minutes
+         * @param maxFailures consecutive failures after which an endpoint is ejected
+         * @param baseDuration duration of the first ejection
+         * @param maxDuration longest ejection
+         * @param unit unit of {@code baseDuration} and {@code maxDuration}
+         * @return instance of builder
+         */
+        public Builder setEjection(int maxFailures, long baseDuration, long maxDuration, @NotNull TimeUnit unit) {
+            this.maxFailures = maxFailures;
+            this.baseEjectionNanos = unit.toNanos(baseDuration);
+            this.maxEjectionNanos = unit.toNanos(maxDuration);
+
+            return this;
+        }
+
+        /**
+         * Set how quickly old latencies lose their weight, defaults to 10 seconds
+         * @param decay time after which a latency has decayed to about a third of its weight
+         * @param unit unit of {@code decay}
+         * @return instance of builder
+         */
+        public Builder setDecay(long decay, @NotNull TimeUnit unit) {
+            this.decayNanos = unit.toNanos(decay);
+
+            return this;
+        }
+
+        /**
+         * Set maximum amount of other endpoints a failed request is sent to, defaults to 2
+         * @param maxFailovers maximum amount of failovers, 0 to disable failover
+         * @return instance of builder
+         */
+        public Builder setMaxFailovers(int maxFailovers) {
+            this.maxFailovers = maxFailovers;
+
+            return this;
+        }
+
+        /**
+         * Set health checks, defaults to a {@code GET} request for the endpoint URL every 10 seconds.
+         * Any response below {@code 500} counts as healthy
+         * @param path path relative to the endpoint URL which is requested
+         * @param interval time between health checks, 0 to disable health checks
+         * @param unit unit of {@code interval}
+         * @return instance of builder
+         */
+        public Builder setHealthCheck(@NotNull String path, long interval, @NotNull TimeUnit unit) {
+            this.healthCheckPath = path;
+            this.healthCheckIntervalNanos = unit.toNanos(interval);
+
+            return this;
+        }
+
+        /**
+         * Build current builder
+         * @return load balancer with properties from current builder
+         *
+         * @throws IllegalArgumentException when no endpoint was added or a setting is invalid
+         */
+        public OwOLoadBalancer build() {
+            if(endpoints.isEmpty()) {
+                throw new IllegalArgumentException("at least one endpoint must be added!");
+            }
+
+            if(maxFailures < 1 || baseEjectionNanos <= 0 || maxEjectionNanos < baseEjectionNanos || decayNanos <= 0
+                    || maxFailovers < 0 || healthCheckIntervalNanos < 0) {
+                throw new IllegalArgumentException("maxFailures and durations must be positive and baseDuration <= maxDuration!");
+            }
+
+            return new OwOLoadBalancer(this);
+        }
+    }
+}
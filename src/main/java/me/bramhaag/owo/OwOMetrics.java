@@ -0,0 +1,348 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per endpoint latency and traffic metrics, recorded with an OkHttp {@link EventListener}.
+ *
+ * Every call is split into phases (DNS, connecting, TLS, writing the request, waiting for the server and reading the
+ * response), which are recorded in a lock-free {@link OwOHistogram} per endpoint and passed to the registered
+ * {@link OwOMetricsListener}s. Metrics are only recorded for {@link OwO} instances built with
+ * {@link OwO.Builder#setMetrics(OwOMetrics)}, without it no listener is installed at all.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwOMetrics {
+
+    /**
+     * Phase of a call
+     */
+    public enum Phase {
+        DNS, CONNECT, TLS, REQUEST, SERVER, RESPONSE, TOTAL
+    }
+
+    @NotNull private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    @NotNull private final List<OwOMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Add a listener which is notified of every recorded call
+     * @param listener listener to add
+     */
+    public void addListener(@NotNull OwOMetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener listener to remove
+     */
+    public void removeListener(@NotNull OwOMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return metrics of every endpoint a call was made to, by path
+     */
+    @NotNull
+    public Map<String, Endpoint> getEndpoints() {
+        return Collections.unmodifiableMap(endpoints);
+    }
+
+    /**
+     * @param path path of the endpoint, for example {@code /upload/pomf}
+     * @return metrics of the endpoint, or {@code null} if no call was made to it
+     */
+    @Nullable
+    public Endpoint getEndpoint(@NotNull String path) {
+        return endpoints.get(path);
+    }
+
+    /**
+     * Register these metrics with the platform MBean server as {@code me.bramhaag.owo:type=OwOMetrics,name=<name>}
+     * @param name name of the MBean
+     * @return name the MBean was registered with
+     *
+     * @throws JMException if the MBean could not be registered
+     */
+    @NotNull
+    public ObjectName registerMBean(@NotNull String name) throws JMException {
+        ObjectName objectName = objectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this), objectName);
+        return objectName;
+    }
+
+    /**
+     * Unregister an MBean registered with {@link OwOMetrics#registerMBean(String)}
+     * @param name name of the MBean
+     *
+     * @throws JMException if the MBean could not be unregistered
+     */
+    public void unregisterMBean(@NotNull String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+    }
+
+    /**
+     * @return factory creating a listener for every call
+     */
+    @NotNull
+    EventListener.Factory eventListenerFactory() {
+        return call -> new CallListener(OwOMetrics.this, call.request());
+    }
+
+    @NotNull
+    private static ObjectName objectName(@NotNull String name) throws JMException {
+        return ObjectName.getInstance("me.bramhaag.owo:type=OwOMetrics,name=" + ObjectName.quote(name));
+    }
+
+    private void record(@NotNull OwOCallMetrics metrics) {
+        Endpoint endpoint = endpoints.computeIfAbsent(metrics.getEndpoint(), path -> new Endpoint());
+        endpoint.record(metrics);
+
+        for (OwOMetricsListener listener : listeners) {
+            try {
+                listener.onCall(metrics);
+            } catch (RuntimeException ignored) {
+                // a broken listener must not fail the call
+            }
+        }
+    }
+
+    /**
+     * Metrics of a single endpoint
+     */
+    public static class Endpoint {
+
+        @NotNull private final Map<Phase, OwOHistogram> histograms = new EnumMap<>(Phase.class);
+
+        @NotNull private final LongAdder succeeded = new LongAdder();
+        @NotNull private final LongAdder failed = new LongAdder();
+        @NotNull private final LongAdder bytesSent = new LongAdder();
+        @NotNull private final LongAdder bytesReceived = new LongAdder();
+
+        private Endpoint() {
+            for (Phase phase : Phase.values()) {
+                histograms.put(phase, new OwOHistogram());
+            }
+        }
+
+        /**
+         * @param phase phase of the calls
+         * @return histogram of the duration of the phase in nanoseconds, calls which skipped the phase are not included
+         */
+        @NotNull
+        public OwOHistogram getHistogram(@NotNull Phase phase) {
+            return histograms.get(phase);
+        }
+
+        /**
+         * @return amount of calls which completed with a 2xx response
+         */
+        public long getSucceeded() {
+            return succeeded.sum();
+        }
+
+        /**
+         * @return amount of calls which failed or completed with another response
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * @return total amount of request body bytes sent
+         */
+        public long getBytesSent() {
+            return bytesSent.sum();
+        }
+
+        /**
+         * @return total amount of response body bytes received
+         */
+        public long getBytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        private void record(@NotNull OwOCallMetrics metrics) {
+            record(Phase.DNS, metrics.getDnsNanos());
+            record(Phase.CONNECT, metrics.getConnectNanos());
+            record(Phase.TLS, metrics.getTlsNanos());
+            record(Phase.REQUEST, metrics.getRequestNanos());
+            record(Phase.SERVER, metrics.getServerNanos());
+            record(Phase.RESPONSE, metrics.getResponseNanos());
+            record(Phase.TOTAL, metrics.getTotalNanos());
+
+            (metrics.isSuccessful() ? succeeded : failed).increment();
+            bytesSent.add(metrics.getBytesSent());
+            bytesReceived.add(metrics.getBytesReceived());
+        }
+
+        private void record(@NotNull Phase phase, long nanos) {
+            if(nanos >= 0) {
+                histograms.get(phase).record(nanos);
+            }
+        }
+    }
+
+    /**
+     * Listener of a single call. OkHttp reports the events of a call one after another, so no synchronization is needed.
+     */
+    private static class CallListener extends EventListener {
+
+        @NotNull private final OwOMetrics metrics;
+        @NotNull private final Request request;
+
+        private long callStart;
+        private long dnsStart, dns = -1;
+        private long connectStart, connect = -1;
+        private long tlsStart, tls = -1;
+        private long requestStart, requestEnd, requestNanos = -1;
+        private long server = -1;
+        private long responseStart, response = -1;
+
+        private long bytesSent;
+        private long bytesReceived;
+        private int code = -1;
+
+        private boolean done;
+
+        CallListener(@NotNull OwOMetrics metrics, @NotNull Request request) {
+            this.metrics = metrics;
+            this.request = request;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            dns = add(dns, System.nanoTime() - dnsStart);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            tlsStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            tls = add(tls, System.nanoTime() - tlsStart);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            connect = add(connect, System.nanoTime() - connectStart);
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+            connect = add(connect, System.nanoTime() - connectStart);
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            requestStart = requestEnd = System.nanoTime();
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            requestEnd = System.nanoTime();
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            requestEnd = System.nanoTime();
+            bytesSent += byteCount;
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            responseStart = System.nanoTime();
+            requestNanos = add(requestNanos, requestEnd - requestStart);
+            server = add(server, responseStart - requestEnd);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            this.response = add(this.response, System.nanoTime() - responseStart);
+            code = response.code();
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            responseStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            response = add(response, System.nanoTime() - responseStart);
+            bytesReceived += byteCount;
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            end(null);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            end(ioe);
+        }
+
+        private void end(@Nullable IOException throwable) {
+            if(done) {
+                return;
+            }
+
+            done = true;
+            metrics.record(new OwOCallMetrics(request.url().encodedPath(), request.method(), dns, connect, tls,
+                    requestNanos, server, response, System.nanoTime() - callStart, bytesSent, bytesReceived, code, throwable));
+        }
+
+        private static long add(long total, long nanos) {
+            return total < 0 ? nanos : total + nanos;
+        }
+    }
+}
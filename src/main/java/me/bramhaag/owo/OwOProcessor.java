@@ -0,0 +1,293 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Reactive Streams {@link Processor} which turns every item it receives into an {@link OwOAction} and emits its result.
+ *
+ * At most {@code concurrency} items are requested from upstream which have not been emitted downstream yet, this
+ * includes items whose action is still running. A slow server or a slow subscriber therefore slows down the publisher
+ * instead of piling up work. A failing action is emitted as a failed {@link OwOResult} and does not end the stream.
+ *
+ * @param <I> type of input
+ * @param <T> type of response of the actions
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwOProcessor<I, T> implements Processor<I, OwOResult<T>> {
+
+    @NotNull private final Function<? super I, OwOAction<T>> mapper;
+    private final int concurrency;
+    private final boolean ordered;
+
+    @NotNull private final Queue<Slot<T>> pending = new ArrayDeque<>();
+    @NotNull private final Queue<OwOResult<T>> ready = new ConcurrentLinkedQueue<>();
+    @NotNull private final Set<CompletableFuture<T>> running = ConcurrentHashMap.newKeySet();
+
+    @NotNull private final AtomicInteger active = new AtomicInteger();
+    @NotNull private final AtomicInteger wip = new AtomicInteger();
+    @NotNull private final AtomicLong requested = new AtomicLong();
+
+    @Nullable private volatile Subscription upstream;
+    @Nullable private volatile Subscriber<? super OwOResult<T>> downstream;
+
+    private volatile boolean done;
+    @Nullable private volatile Throwable error;
+    private volatile boolean cancelled;
+    private boolean terminated;
+
+    /**
+     * @param mapper function creating the action for an item, for example {@code owo::upload}
+     * @param concurrency maximum amount of items between upstream and downstream, including running actions
+     * @param ordered true to emit results in the order the items were received, false to emit them as they complete
+     *
+     * @throws IllegalArgumentException if {@code concurrency} is not positive
+     */
+    public OwOProcessor(@NotNull Function<? super I, OwOAction<T>> mapper, int concurrency, boolean ordered) {
+        if(concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive!");
+        }
+
+        this.mapper = mapper;
+        this.concurrency = concurrency;
+        this.ordered = ordered;
+    }
+
+    @Override
+    public void onSubscribe(@NotNull Subscription subscription) {
+        if(upstream != null || cancelled) {
+            subscription.cancel();
+            return;
+        }
+
+        upstream = subscription;
+        subscription.request(concurrency);
+    }
+
+    @Override
+    public void onNext(@NotNull I item) {
+        if(done || cancelled) {
+            return;
+        }
+
+        active.incrementAndGet();
+
+        final Slot<T> slot = new Slot<>();
+        if(ordered) {
+            synchronized (pending) {
+                pending.add(slot);
+            }
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = mapper.apply(item).executeAsync();
+        } catch (RuntimeException e) {
+            complete(slot, OwOResult.<T>failure(e));
+            return;
+        }
+
+        running.add(future);
+        future.whenComplete((value, throwable) -> {
+            running.remove(future);
+            complete(slot, throwable == null ? OwOResult.success(value) : OwOResult.<T>failure(throwable));
+        });
+    }
+
+    @Override
+    public void onError(@NotNull Throwable throwable) {
+        if(done) {
+            return;
+        }
+
+        error = throwable;
+        done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        drain();
+    }
+
+    @Override
+    public void subscribe(@NotNull Subscriber<? super OwOResult<T>> subscriber) {
+        synchronized (this) {
+            if(downstream != null) {
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("OwOProcessor only supports a single subscriber"));
+                return;
+            }
+
+            downstream = subscriber;
+        }
+
+        subscriber.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+                if(n <= 0) {
+                    error = new IllegalArgumentException("request must be positive, got " + n);
+                    done = true;
+                    cancelUpstream();
+                    drain();
+                    return;
+                }
+
+                long current;
+                do {
+                    current = requested.get();
+                } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+
+                for (CompletableFuture<T> future : running) {
+                    future.cancel(true);
+                }
+
+                drain();
+            }
+        });
+
+        drain();
+    }
+
+    private void complete(@NotNull Slot<T> slot, @NotNull OwOResult<T> result) {
+        slot.result = result;
+
+        if(!ordered) {
+            ready.add(result);
+        }
+
+        drain();
+    }
+
+    private void cancelUpstream() {
+        Subscription subscription = upstream;
+        if(subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    @Nullable
+    private OwOResult<T> poll() {
+        if(!ordered) {
+            return ready.poll();
+        }
+
+        synchronized (pending) {
+            Slot<T> head = pending.peek();
+            if(head == null || head.result == null) {
+                return null;
+            }
+
+            pending.poll();
+            return head.result;
+        }
+    }
+
+    /**
+     * Emit completed results while there is demand, only one thread emits at a time
+     */
+    private void drain() {
+        if(wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+
+        do {
+            Subscriber<? super OwOResult<T>> subscriber = downstream;
+
+            if(cancelled) {
+                synchronized (pending) {
+                    pending.clear();
+                }
+
+                ready.clear();
+            } else if(subscriber != null && !terminated) {
+                long demand = requested.get();
+                long emitted = 0;
+
+                while (emitted != demand && !cancelled) {
+                    OwOResult<T> result = poll();
+                    if(result == null) {
+                        break;
+                    }
+
+                    active.decrementAndGet();
+                    subscriber.onNext(result);
+                    emitted++;
+                }
+
+                if(emitted > 0) {
+                    if(demand != Long.MAX_VALUE) {
+                        requested.addAndGet(-emitted);
+                    }
+
+                    Subscription subscription = upstream;
+                    if(!done && subscription != null) {
+                        subscription.request(emitted);
+                    }
+                }
+
+                if(done && !cancelled && active.get() == 0) {
+                    terminated = true;
+
+                    Throwable throwable = error;
+                    if(throwable != null) {
+                        subscriber.onError(throwable);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+            }
+
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Result of an item, in the order it was received
+     */
+    private static class Slot<T> {
+        @Nullable volatile OwOResult<T> result;
+    }
+}
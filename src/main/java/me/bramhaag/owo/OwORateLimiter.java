@@ -0,0 +1,393 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client side rate limiter, which can be shared between {@link OwO} instances using the same key.
+ *
+ * Requests need a token from a token bucket and a slot below an adaptive concurrency limit before they are sent.
+ * The limit grows while latency stays close to the lowest latency seen and shrinks as latency rises (gradient),
+ * and it is halved on every {@code 429}/{@code 503} response (AIMD). A {@code Retry-After} header pauses all requests,
+ * after which the throttled request is sent again. Waiting requests are served in the order they arrived, a request
+ * whose call is canceled while it waits gives up its place.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwORateLimiter {
+
+    private static final long CANCEL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final double permitsPerNano;
+    private final double burst;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    private final int maxRetries;
+    private final long maxRetryAfterNanos;
+
+    @NotNull private final ReentrantLock lock = new ReentrantLock();
+    @NotNull private final Condition changed = lock.newCondition();
+
+    private double tokens;
+    private long refilled = System.nanoTime();
+    private long pausedUntil = refilled;
+
+    private double limit;
+    private int inFlight;
+
+    private long minLatency = Long.MAX_VALUE;
+    private double smoothedLatency;
+    private int samples;
+
+    private long nextTicket;
+    private long serving;
+    @NotNull private final Set<Long> abandoned = new HashSet<>();
+
+    private OwORateLimiter(@NotNull Builder builder) {
+        this.permitsPerNano = builder.permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = builder.burst;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.tolerance = builder.tolerance;
+        this.maxRetries = builder.maxRetries;
+        this.maxRetryAfterNanos = builder.maxRetryAfterNanos;
+
+        this.tokens = burst;
+        this.limit = builder.initialLimit;
+    }
+
+    /**
+     * @return current concurrency limit
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return amount of requests currently being sent
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return amount of requests waiting for a token or a slot
+     */
+    public long getQueued() {
+        lock.lock();
+        try {
+            return nextTicket - serving - abandoned.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param budget retry policy whose budget pays for every throttled request which is sent again, or null
+     * @return interceptor applying this limiter to every request
+     */
+    @NotNull
+    Interceptor interceptor(@Nullable OwORetryPolicy budget) {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                boolean replayable = Requests.isReplayable(request);
+
+                for (int attempt = 0; ; attempt++) {
+                    acquire(chain);
+
+                    long start = System.nanoTime();
+                    Response response;
+
+                    try {
+                        response = chain.proceed(request);
+                    } catch (IOException | RuntimeException e) {
+                        release(System.nanoTime() - start, false);
+                        throw e;
+                    }
+
+                    boolean throttled = Requests.isThrottled(response);
+                    release(System.nanoTime() - start, throttled);
+
+                    if(!throttled) {
+                        return response;
+                    }
+
+                    long delay = Requests.retryAfterNanos(response);
+                    if(delay >= 0) {
+                        pause(Math.min(delay, maxRetryAfterNanos));
+                    }
+
+                    if(!replayable || attempt >= maxRetries || delay > maxRetryAfterNanos
+                            || (budget != null && !budget.withdraw())) {
+                        return response;
+                    }
+
+                    Requests.closeQuietly(response);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wait for a token and a slot below the concurrency limit, in the order of arrival
+     * @param chain chain of the request, which stops waiting when its call is canceled
+     */
+    private void acquire(@NotNull Interceptor.Chain chain) throws IOException {
+        lock.lock();
+
+        try {
+            long ticket = nextTicket++;
+
+            try {
+                while (true) {
+                    if(chain.call().isCanceled()) {
+                        leave(ticket);
+                        throw new IOException("Canceled");
+                    }
+
+                    long now = System.nanoTime();
+                    refill(now);
+
+                    long wait;
+                    if(ticket != serving || inFlight >= (int) limit) {
+                        wait = Long.MAX_VALUE;
+                    } else if(pausedUntil - now > 0) {
+                        wait = pausedUntil - now;
+                    } else if(tokens < 1) {
+                        wait = (long) Math.ceil((1 - tokens) / permitsPerNano);
+                    } else {
+                        break;
+                    }
+
+                    // woken up now and then to notice a canceled call, which does not interrupt its thread
+                    changed.awaitNanos(Math.min(wait, CANCEL_CHECK_NANOS));
+                }
+            } catch (InterruptedException e) {
+                leave(ticket);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for rate limiter");
+            }
+
+            tokens -= 1;
+            inFlight++;
+            advance();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give up a ticket which is still waiting, so the requests behind it are not held up
+     */
+    private void leave(long ticket) {
+        if(ticket == serving) {
+            advance();
+        } else {
+            abandoned.add(ticket);
+        }
+
+        changed.signalAll();
+    }
+
+    /**
+     * Move on to the next ticket, skipping tickets whose thread gave up waiting
+     */
+    private void advance() {
+        serving++;
+
+        while (abandoned.remove(serving)) {
+            serving++;
+        }
+    }
+
+    /**
+     * Return a slot and adjust the concurrency limit
+     * @param latency time the request took in nanoseconds
+     * @param throttled true when the server asked to slow down
+     */
+    private void release(long latency, boolean throttled) {
+        lock.lock();
+
+        try {
+            inFlight--;
+
+            if(throttled) {
+                limit = Math.max(minLimit, limit / 2);
+            } else {
+                adjust(latency);
+            }
+
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gradient step: scale the limit by how close the smoothed latency is to the lowest latency seen,
+     * with {@code sqrt(limit)} headroom so it can grow while latency stays flat
+     */
+    private void adjust(long latency) {
+        minLatency = Math.min(minLatency, Math.max(1, latency));
+        smoothedLatency = samples++ == 0 ? latency : smoothedLatency * 0.9 + latency * 0.1;
+
+        // decay the minimum now and then, so a single fast response does not keep the limit down forever
+        if(samples % 1000 == 0) {
+            minLatency = (long) smoothedLatency;
+        }
+
+        if(inFlight + 1 < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * minLatency / smoothedLatency));
+        double target = limit * gradient + Math.sqrt(limit);
+
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * 0.8 + target * 0.2));
+    }
+
+    private void pause(long nanos) {
+        lock.lock();
+
+        try {
+            long until = System.nanoTime() + nanos;
+            if(until - pausedUntil > 0) {
+                pausedUntil = until;
+            }
+
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - refilled) * permitsPerNano);
+        refilled = now;
+    }
+
+    public static class Builder {
+
+        double permitsPerSecond = 10;
+        double burst = 10;
+
+        int initialLimit = 4;
+        int minLimit = 1;
+        int maxLimit = 64;
+        double tolerance = 1.5;
+
+        int maxRetries = 3;
+        long maxRetryAfterNanos = TimeUnit.SECONDS.toNanos(60);
+
+        /**
+         * Set request rate, defaults to 10 requests per second with a burst of 10
+         * @param permitsPerSecond amount of requests per second
+         * @param burst amount of requests which can be sent at once after being idle
+         * @return instance of builder
+         */
+        public Builder setRate(double permitsPerSecond, int burst) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+
+            return this;
+        }
+
+        /**
+         * Set concurrency limits, defaults to starting at 4 and staying between 1 and 64
+         * @param initialLimit limit to start with
+         * @param minLimit lowest limit
+         * @param maxLimit highest limit
+         * @return instance of builder
+         */
+        public Builder setConcurrency(int initialLimit, int minLimit, int maxLimit) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+
+            return this;
+        }
+
+        /**
+         * Set how much slower than the lowest latency seen requests can get before the limit shrinks, defaults to 1.5
+         * @param tolerance ratio of latency to lowest latency, at least 1
+         * @return instance of builder
+         */
+        public Builder setLatencyTolerance(double tolerance) {
+            this.tolerance = tolerance;
+
+            return this;
+        }
+
+        /**
+         * Set how often a throttled request is sent again, defaults to 3 times and waiting at most 60 seconds
+         * @param maxRetries maximum amount of retries, 0 to return throttled responses right away
+         * @param maxRetryAfter longest {@code Retry-After} which is waited for, longer delays are returned to the caller
+         * @param unit unit of {@code maxRetryAfter}
+         * @return instance of builder
+         */
+        public Builder setRetries(int maxRetries, long maxRetryAfter, @NotNull TimeUnit unit) {
+            this.maxRetries = maxRetries;
+            this.maxRetryAfterNanos = unit.toNanos(maxRetryAfter);
+
+            return this;
+        }
+
+        /**
+         * Build current builder
+         * @return rate limiter with properties from current builder
+         *
+         * @throws IllegalArgumentException when a limit is invalid
+         */
+        public OwORateLimiter build() {
+            if(permitsPerSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1!");
+            }
+
+            if(minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("concurrency limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit!");
+            }
+
+            if(tolerance < 1 || maxRetries < 0 || maxRetryAfterNanos < 0) {
+                throw new IllegalArgumentException("tolerance must be at least 1 and retries cannot be negative!");
+            }
+
+            return new OwORateLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Outcome of a single item of a bulk operation, holding either a value or the {@link Throwable} it failed with
+ *
+ * @param <T> type of value
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwOResult<T> {
+
+    @Nullable private final T value;
+    @Nullable private final Throwable throwable;
+
+    private OwOResult(@Nullable T value, @Nullable Throwable throwable) {
+        this.value = value;
+        this.throwable = throwable;
+    }
+
+    /**
+     * Create a successful result
+     * @param value value of result
+     * @param <T> type of value
+     * @return successful result
+     */
+    public static <T> OwOResult<T> success(@NotNull T value) {
+        return new OwOResult<>(value, null);
+    }
+
+    /**
+     * Create a failed result
+     * @param throwable cause of failure
+     * @param <T> type of value
+     * @return failed result
+     */
+    public static <T> OwOResult<T> failure(@NotNull Throwable throwable) {
+        return new OwOResult<>(null, throwable);
+    }
+
+    /**
+     * @return true when this result holds a value
+     */
+    public boolean isSuccessful() {
+        return throwable == null;
+    }
+
+    /**
+     * @return value of result, null when failed
+     */
+    @Nullable
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return cause of failure, null when successful
+     */
+    @Nullable
+    public Throwable getThrowable() {
+        return throwable;
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import retrofit2.Call;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Policy for retrying failed requests, which can be shared between {@link OwO} instances.
+ *
+ * Retries wait for an exponential backoff with full jitter, or longer when the server sends {@code Retry-After}.
+ * A {@code Retry-After} longer than the maximum backoff is not waited for, the response is returned instead.
+ * Every request adds a fraction of a token to a retry budget and every retry takes a whole token, so retries stop
+ * when a large part of the requests is failing. Requests which are not idempotent, like uploads, are only retried
+ * when the server cannot have processed them. When the {@link OwO} also has a rate limiter, {@code 429}/{@code 503}
+ * responses are left to the limiter, and requests sent again by the limiter, key pool or load balancer take from the same budget.
+ *
+ * Optionally, shorten requests are hedged: when no response arrived after the configured percentile of recent
+ * latencies, a second request is sent and the first response wins.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwORetryPolicy {
+
+    private static final long CANCEL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+
+    private final double budgetRatio;
+    private final double budgetReserve;
+    private final boolean retryNonIdempotent;
+
+    private final boolean hedging;
+    private final double hedgePercentile;
+    private final long minHedgeDelayNanos;
+
+    private double budget;
+
+    @NotNull private final long[] latencies = new long[256];
+    private int latencyIndex;
+    private int latencyCount;
+    private int latenciesSinceUpdate;
+    private long hedgeDelayNanos = -1;
+
+    private OwORetryPolicy(@NotNull Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayNanos = builder.baseDelayNanos;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.budgetRatio = builder.budgetRatio;
+        this.budgetReserve = builder.budgetReserve;
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+        this.hedging = builder.hedging;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.minHedgeDelayNanos = builder.minHedgeDelayNanos;
+
+        this.budget = budgetReserve;
+    }
+
+    /**
+     * @return amount of retries which can currently be spent
+     */
+    public synchronized double getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return true when shorten requests are hedged
+     */
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    /**
+     * @param retryThrottled false when an inner layer already resends {@code 429}/{@code 503} responses
+     * @return interceptor retrying failed requests
+     */
+    @NotNull
+    Interceptor interceptor(boolean retryThrottled) {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                boolean idempotent = retryNonIdempotent || isIdempotent(request.method());
+                boolean replayable = Requests.isReplayable(request);
+
+                deposit();
+
+                for (int attempt = 1; ; attempt++) {
+                    Response response = null;
+                    IOException failure = null;
+
+                    try {
+                        response = chain.proceed(request);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+
+                    long retryAfter = response == null ? -1 : Requests.retryAfterNanos(response);
+
+                    boolean retry = attempt < maxAttempts && replayable && retryAfter <= maxDelayNanos
+                            && (retryThrottled || failure != null || !Requests.isThrottled(response))
+                            && (failure != null ? isRetryable(failure, idempotent) : isRetryable(response, idempotent))
+                            && withdraw();
+
+                    if(!retry) {
+                        if(failure != null) {
+                            throw failure;
+                        }
+
+                        return response;
+                    }
+
+                    long delay = Math.max(backoff(attempt), retryAfter);
+                    Requests.closeQuietly(response);
+
+                    pause(chain, delay);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wait before a retry, waking up regularly to stop as soon as the call is canceled
+     * @param chain chain of the call
+     * @param nanos delay in nanoseconds
+     *
+     * @throws IOException when the call is canceled or the thread is interrupted while waiting
+     */
+    private static void pause(@NotNull Interceptor.Chain chain, long nanos) throws IOException {
+        long deadline = System.nanoTime() + nanos;
+
+        try {
+            for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+                if(chain.call().isCanceled()) {
+                    throw new IOException("Canceled");
+                }
+
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, CANCEL_CHECK_NANOS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting to retry");
+        }
+
+        if(chain.call().isCanceled()) {
+            throw new IOException("Canceled");
+        }
+    }
+
+    /**
+     * Hedge a call when hedging is enabled
+     * @param call idempotent call
+     * @param <T> type of response
+     * @return hedged call, or {@code call} when hedging is disabled
+     */
+    @NotNull
+    <T> Call<T> hedge(@NotNull Call<T> call) {
+        return hedging ? new HedgedCall<>(call, this) : call;
+    }
+
+    /**
+     * @return delay in nanoseconds after which a hedged request is sent, or -1 when there are not enough samples yet
+     */
+    synchronized long hedgeDelayNanos() {
+        return hedgeDelayNanos;
+    }
+
+    /**
+     * Record the latency of a hedged call
+     * @param nanos latency in nanoseconds
+     */
+    synchronized void recordLatency(long nanos) {
+        latencies[latencyIndex] = nanos;
+        latencyIndex = (latencyIndex + 1) % latencies.length;
+        latencyCount = Math.min(latencyCount + 1, latencies.length);
+
+        if(latencyCount >= 20 && ++latenciesSinceUpdate >= 16) {
+            latenciesSinceUpdate = 0;
+
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+
+            long percentile = sorted[Math.min(sorted.length - 1, (int) Math.ceil(hedgePercentile * sorted.length) - 1)];
+            hedgeDelayNanos = Math.max(minHedgeDelayNanos, percentile);
+        }
+    }
+
+    /**
+     * Take a token from the retry budget for a hedged request, or for a request which an inner layer sends again
+     * @return true when a token was available
+     */
+    synchronized boolean withdraw() {
+        if(budget < 1) {
+            return false;
+        }
+
+        budget -= 1;
+        return true;
+    }
+
+    private synchronized void deposit() {
+        budget = Math.min(budgetReserve, budget + budgetRatio);
+    }
+
+    private long backoff(int attempt) {
+        long ceiling = baseDelayNanos << Math.min(attempt - 1, 30);
+        if(ceiling <= 0 || ceiling > maxDelayNanos) {
+            ceiling = maxDelayNanos;
+        }
+
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    static boolean isIdempotent(@NotNull String method) {
+        switch (method) {
+            case "GET":
+            case "HEAD":
+            case "OPTIONS":
+            case "PUT":
+            case "DELETE":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static boolean isRetryable(@NotNull IOException e, boolean idempotent) {
+        if(e instanceof ConnectException || e instanceof UnknownHostException || e instanceof NoRouteToHostException) {
+            return true;
+        }
+
+        if(e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+            return false;
+        }
+
+        return idempotent && !"Canceled".equals(e.getMessage());
+    }
+
+    static boolean isRetryable(@NotNull Response response, boolean idempotent) {
+        switch (response.code()) {
+            case 429:
+            case 503:
+                return true;
+            case 408:
+            case 500:
+            case 502:
+            case 504:
+                return idempotent;
+            default:
+                return false;
+        }
+    }
+
+    public static class Builder {
+
+        int maxAttempts = 3;
+        long baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        long maxDelayNanos = TimeUnit.SECONDS.toNanos(10);
+
+        double budgetRatio = 0.2;
+        double budgetReserve = 10;
+        boolean retryNonIdempotent;
+
+        boolean hedging;
+        double hedgePercentile = 0.95;
+        long minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+        /**
+         * Set maximum amount of attempts, including the first one, defaults to 3
+         * @param maxAttempts maximum amount of attempts
+         * @return instance of builder
+         */
+        public Builder setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+
+            return this;
+        }
+
+        /**
+         * Set backoff, defaults to 100 milliseconds doubling up to 10 seconds. The actual delay is a random amount up to the backoff.
+         * Responses with a {@code Retry-After} longer than {@code maxDelay} are returned instead of being retried
+         * @param baseDelay backoff before the first retry
+         * @param maxDelay highest backoff
+         * @param unit unit of {@code baseDelay} and {@code maxDelay}
+         * @return instance of builder
+         */
+        public Builder setBackoff(long baseDelay, long maxDelay, @NotNull TimeUnit unit) {
+            this.baseDelayNanos = unit.toNanos(baseDelay);
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+
+            return this;
+        }
+
+        /**
+         * Set retry budget, defaults to 0.2 retries per request and a reserve of 10 retries
+         * @param ratio retries earned by every request
+         * @param reserve maximum amount of retries which can be saved up
+         * @return instance of builder
+         */
+        public Builder setBudget(double ratio, int reserve) {
+            this.budgetRatio = ratio;
+            this.budgetReserve = reserve;
+
+            return this;
+        }
+
+        /**
+         * Set whether requests which are not idempotent are retried after they may have reached the server, defaults to false
+         * @param retryNonIdempotent true to retry uploads on any transient failure
+         * @return instance of builder
+         */
+        public Builder setRetryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+
+            return this;
+        }
+
+        /**
+         * Enable hedging of shorten requests, a second request is sent when no response arrived after
+         * {@code percentile} of recent latencies, but not sooner than {@code minDelay}
+         * @param percentile percentile of recent latencies, for example 0.95
+         * @param minDelay shortest delay before a hedged request
+         * @param unit unit of {@code minDelay}
+         * @return instance of builder
+         */
+        public Builder setHedging(double percentile, long minDelay, @NotNull TimeUnit unit) {
+            this.hedging = true;
+            this.hedgePercentile = percentile;
+            this.minHedgeDelayNanos = unit.toNanos(minDelay);
+
+            return this;
+        }
+
+        /**
+         * Build current builder
+         * @return retry policy with properties from current builder
+         *
+         * @throws IllegalArgumentException when a setting is invalid
+         */
+        public OwORetryPolicy build() {
+            if(maxAttempts < 1 || baseDelayNanos < 0 || maxDelayNanos < baseDelayNanos) {
+                throw new IllegalArgumentException("maxAttempts must be positive and 0 <= baseDelay <= maxDelay!");
+            }
+
+            if(budgetRatio < 0 || budgetReserve < 0) {
+                throw new IllegalArgumentException("budget cannot be negative!");
+            }
+
+            if(hedgePercentile <= 0 || hedgePercentile > 1) {
+                throw new IllegalArgumentException("percentile must be between 0 and 1!");
+            }
+
+            return new OwORetryPolicy(this);
+        }
+    }
+}
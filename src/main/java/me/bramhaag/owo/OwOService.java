@@ -18,6 +18,8 @@ import retrofit2.http.POST;
 import retrofit2.http.Part;
 import retrofit2.http.Query;
 
+import java.util.List;
+
 public interface OwOService {
 
     /**
@@ -30,6 +32,16 @@ public interface OwOService {
     @POST("upload/pomf")
     Call<OwOFile> upload(@Part MultipartBody.Part file);
 
+    /**
+     * Upload multiple files in a single request to the {@code /upload/pomf} endpoint
+     *
+     * @param files Files to upload
+     * @return {@link Call} of type {@link List} of {@link OwOFile}, in the same order as {@code files}
+     */
+    @Multipart
+    @POST("upload/pomf")
+    Call<List<OwOFile>> upload(@Part List<MultipartBody.Part> files);
+
     /**
      * Shorten link using the {@code /shorten/polr} endpoint
      *
@@ -0,0 +1,439 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.Request;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of shortened URLs, which can be shared between {@link OwO} instances.
+ *
+ * Entries expire after a fixed time to live and the least recently used entry is evicted when the cache is full.
+ * Concurrent misses for the same URL share a single request.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwOShortenCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+
+    @NotNull private final Map<String, CacheEntry> entries;
+    @NotNull private final Map<String, Flight> flights = new HashMap<>();
+
+    @NotNull private final AtomicLong hits = new AtomicLong();
+    @NotNull private final AtomicLong misses = new AtomicLong();
+    @NotNull private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize maximum amount of cached URLs
+     * @param ttl time a shortened URL is cached for
+     * @param unit unit of {@code ttl}
+     *
+     * @throws IllegalArgumentException if {@code maxSize} or {@code ttl} is not positive
+     */
+    public OwOShortenCache(int maxSize, long ttl, @NotNull TimeUnit unit) {
+        if(maxSize <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("maxSize and ttl must be positive!");
+        }
+
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if(size() > OwOShortenCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return amount of lookups which were answered from the cache or by joining a request in flight
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return amount of lookups which needed a new request
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return amount of entries which were evicted because the cache was full or they expired
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return amount of cached URLs, including expired entries which have not been evicted yet
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove all cached URLs
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Wrap a shorten call, so it is answered from this cache when possible
+     * @param url URL to shorten
+     * @param resultUrl shorten URL used
+     * @param call call doing the actual request
+     * @return cached call
+     */
+    @NotNull
+    Call<String> wrap(@NotNull String url, @NotNull String resultUrl, @NotNull Call<String> call) {
+        return new CachedCall(resultUrl + '\u0000' + url, call);
+    }
+
+    /**
+     * Find a cached value or the request in flight for {@code key}, joining it, or register {@code flight} when there is neither
+     * @param call call looking up {@code key}
+     * @param flight flight to register when {@code call} has to do the request
+     * @param count false when the lookup is repeated for a call which already counted as hit or miss
+     * @return cached value, the {@link Flight} {@code call} joined, or {@code flight} when {@code call} should do the request
+     */
+    @NotNull
+    private synchronized Object lookup(@NotNull String key, @NotNull CachedCall call, @NotNull Flight flight, boolean count) {
+        CacheEntry entry = entries.get(key);
+        if(entry != null) {
+            if(entry.expires - System.nanoTime() > 0) {
+                if(count) {
+                    hits.incrementAndGet();
+                }
+
+                return entry.value;
+            }
+
+            entries.remove(key);
+            evictions.incrementAndGet();
+        }
+
+        Flight current = flights.get(key);
+        if(current != null) {
+            if(count) {
+                hits.incrementAndGet();
+            }
+
+            current.waiters.add(call);
+            call.joined = current;
+            return current;
+        }
+
+        if(count) {
+            misses.incrementAndGet();
+        }
+
+        flights.put(key, flight);
+        return flight;
+    }
+
+    /**
+     * Complete a flight, caching {@code value} when it is not null
+     * @return calls which were waiting for {@code flight}
+     */
+    @NotNull
+    private synchronized List<CachedCall> complete(@NotNull String key, @NotNull Flight flight, @Nullable String value) {
+        flights.remove(key, flight);
+
+        if(value != null) {
+            entries.put(key, new CacheEntry(value, System.nanoTime() + ttlNanos));
+        }
+
+        List<CachedCall> waiters = new ArrayList<>(flight.waiters);
+        flight.waiters.clear();
+
+        for (CachedCall waiter : waiters) {
+            waiter.joined = null;
+        }
+
+        return waiters;
+    }
+
+    /**
+     * Stop waiting for the flight {@code call} joined
+     * @return true when {@code call} was waiting and will not be completed by the flight anymore
+     */
+    private synchronized boolean leave(@NotNull CachedCall call) {
+        Flight flight = call.joined;
+        if(flight == null || !flight.waiters.remove(call)) {
+            return false;
+        }
+
+        call.joined = null;
+        return true;
+    }
+
+    private static class CacheEntry {
+
+        @NotNull final String value;
+        final long expires;
+
+        CacheEntry(@NotNull String value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Request in flight, which other calls for the same URL wait for. Its waiters are guarded by the cache
+     */
+    private static class Flight {
+
+        @NotNull final List<CachedCall> waiters = new ArrayList<>();
+    }
+
+    /**
+     * {@link Callback} which lets {@link CachedCall#execute()} wait for a result
+     */
+    private static class SyncCallback implements Callback<String> {
+
+        @NotNull private final CountDownLatch latch = new CountDownLatch(1);
+
+        @Nullable private Response<String> response;
+        @Nullable private Throwable throwable;
+
+        @Override
+        public void onResponse(Call<String> call, Response<String> response) {
+            this.response = response;
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(Call<String> call, Throwable t) {
+            this.throwable = t;
+            latch.countDown();
+        }
+
+        @NotNull
+        Response<String> await(@NotNull Call<String> call) throws IOException {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                call.cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for shorten request");
+            }
+
+            if(response != null) {
+                return response;
+            }
+
+            if(throwable instanceof IOException) {
+                throw (IOException) throwable;
+            }
+
+            if(throwable instanceof RuntimeException) {
+                throw (RuntimeException) throwable;
+            }
+
+            throw new IOException("request failed", throwable);
+        }
+    }
+
+    /**
+     * {@link Call} which checks the cache and joins requests in flight before doing its own request.
+     * When the call doing the request is canceled, the calls waiting for it look up the URL again,
+     * so one of them does the request instead
+     */
+    private class CachedCall implements Call<String> {
+
+        @NotNull private final String key;
+        @NotNull private final Call<String> delegate;
+
+        @Nullable private volatile Callback<String> callback;
+        @Nullable private Flight joined;
+
+        private boolean executed;
+        private volatile boolean canceled;
+
+        CachedCall(@NotNull String key, @NotNull Call<String> delegate) {
+            this.key = key;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response<String> execute() throws IOException {
+            markExecuted();
+
+            SyncCallback callback = new SyncCallback();
+            this.callback = callback;
+            run(true, true);
+
+            return callback.await(this);
+        }
+
+        @Override
+        public void enqueue(@NotNull final Callback<String> callback) {
+            markExecuted();
+
+            this.callback = callback;
+            run(false, true);
+        }
+
+        /**
+         * Answer from the cache, join the request in flight or do the request
+         * @param sync true to do the request on the calling thread
+         * @param count false when this call already counted as hit or miss
+         */
+        private void run(boolean sync, boolean count) {
+            Callback<String> callback = this.callback;
+
+            if(canceled) {
+                callback.onFailure(this, new IOException("Canceled"));
+                return;
+            }
+
+            final Flight flight = new Flight();
+            Object found = lookup(key, this, flight, count);
+
+            if(found instanceof String) {
+                callback.onResponse(this, Response.success((String) found));
+                return;
+            }
+
+            if(found != flight) {
+                // completed by the call doing the request
+                return;
+            }
+
+            if(!sync) {
+                delegate.enqueue(new Callback<String>() {
+                    @Override
+                    public void onResponse(Call<String> call, Response<String> response) {
+                        settle(flight, response);
+                    }
+
+                    @Override
+                    public void onFailure(Call<String> call, Throwable t) {
+                        fail(flight, t);
+                    }
+                });
+
+                return;
+            }
+
+            Response<String> response;
+            try {
+                response = delegate.execute();
+            } catch (IOException | RuntimeException e) {
+                fail(flight, e);
+                return;
+            }
+
+            settle(flight, response);
+        }
+
+        private void settle(@NotNull Flight flight, @NotNull Response<String> response) {
+            String body = response.body();
+
+            if(response.isSuccessful() && body != null) {
+                List<CachedCall> waiters = complete(key, flight, body);
+                callback.onResponse(this, response);
+
+                for (CachedCall waiter : waiters) {
+                    waiter.callback.onResponse(waiter, Response.success(body));
+                }
+            } else {
+                List<CachedCall> waiters = complete(key, flight, null);
+                callback.onResponse(this, response);
+
+                HttpException exception = new HttpException(response);
+                for (CachedCall waiter : waiters) {
+                    waiter.callback.onFailure(waiter, exception);
+                }
+            }
+        }
+
+        private void fail(@NotNull Flight flight, @NotNull Throwable t) {
+            List<CachedCall> waiters = complete(key, flight, null);
+            callback.onFailure(this, t);
+
+            for (CachedCall waiter : waiters) {
+                if(canceled) {
+                    // the failure only concerns this call, hand the request over to the waiters
+                    waiter.run(false, false);
+                } else {
+                    waiter.callback.onFailure(waiter, t);
+                }
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            delegate.cancel();
+
+            if(leave(this)) {
+                callback.onFailure(this, new IOException("Canceled"));
+            }
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call<String> clone() {
+            return new CachedCall(key, delegate.clone());
+        }
+
+        @Override
+        public Request request() {
+            return delegate.request();
+        }
+
+        private synchronized void markExecuted() {
+            if(executed) {
+                throw new IllegalStateException("Already executed.");
+            }
+
+            executed = true;
+        }
+    }
+}
@@ -0,0 +1,1106 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import retrofit2.HttpException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Durable upload spool. Uploads are appended to a journal on disk and acknowledged with a ticket right away, then
+ * uploaded in the background with at most a fixed amount of requests at once, so bursts and outages of the API are
+ * absorbed without keeping payloads in memory.
+ *
+ * The journal is split into segment files, which are deleted once every upload in them has completed. Appends are
+ * forced to disk in batches every sync interval, so uploads acknowledged during the last interval can be lost when the
+ * machine crashes. Results are journaled as well and can be looked up by ticket after a restart, until they are
+ * forgotten or pushed out by newer results. Uploads which were running when the spool was closed are sent again when it
+ * is reopened, so every upload is sent at least once.
+ *
+ * Uploads failing with an {@link IOException}, a {@code 429} or a {@code 5xx} response are retried with exponential
+ * backoff, during which the spool sends nothing. Other failures complete the upload with a failed result.
+ *
+ * The journal is written through {@link FileChannel}s, which are closed when a thread is interrupted while using them,
+ * so threads submitting uploads must not be interrupted.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwOSpool implements Closeable {
+
+    private static final int SEGMENT_MAGIC = 0x4F574F53;
+    private static final int RESULT_MAGIC = 0x4F574F52;
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_LENGTH = 8;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String RESULTS_FILE = "results.log";
+    private static final String RESULTS_TEMP_FILE = "results.log.tmp";
+
+    private static final int RESULT_FAILURE = 0;
+    private static final int RESULT_SUCCESS = 1;
+    private static final int RESULT_FORGOTTEN = 2;
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_STRING_LENGTH = 0xFFFF;
+
+    @NotNull private final OwO owo;
+    @NotNull private final File directory;
+    private final long segmentSize;
+    private final int maxConcurrency;
+    private final long minBackoffNanos;
+    private final long maxBackoffNanos;
+    private final int maxResults;
+
+    @NotNull private final ReentrantLock lock = new ReentrantLock();
+    @NotNull private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    @NotNull private final Map<Long, Entry> pending = new HashMap<>();
+    @NotNull private final Deque<Entry> queue = new ArrayDeque<>();
+    @NotNull private final Set<Long> reserved = new HashSet<>();
+    @NotNull private final Map<Long, OwOResult<OwOFile>> completed;
+    @NotNull private FileChannel results;
+    @NotNull private Segment current;
+
+    private long nextTicket = 1;
+    private int inFlight;
+    private long backoffNanos;
+    private boolean paused;
+    private boolean dirty;
+    private boolean closed;
+
+    @NotNull private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    @NotNull private final ScheduledExecutorService scheduler;
+
+    private OwOSpool(@NotNull Builder builder) throws IOException {
+        this.owo = builder.owo;
+        this.directory = builder.directory;
+        this.segmentSize = builder.segmentSize;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.minBackoffNanos = builder.minBackoffNanos;
+        this.maxBackoffNanos = builder.maxBackoffNanos;
+        this.maxResults = builder.maxResults;
+        this.completed = new LinkedHashMap<Long, OwOResult<OwOFile>>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, OwOResult<OwOFile>> eldest) {
+                return size() > OwOSpool.this.maxResults;
+            }
+        };
+
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create spool directory " + directory);
+        }
+
+        this.results = FileChannel.open(new File(directory, RESULTS_FILE).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            Set<Long> done = new HashSet<>();
+            recoverResults(done);
+
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+            if(files != null) {
+                Arrays.sort(files);
+
+                for (File file : files) {
+                    Segment segment = new Segment(Long.parseLong(file.getName().substring(0, 16), 16), file);
+                    segments.put(segment.id, segment);
+                    nextTicket = Math.max(nextTicket, segment.id);
+                    recover(segment, done);
+                }
+            }
+
+            Map.Entry<Long, Segment> last = segments.lastEntry();
+            this.current = last != null && !isFull(last.getValue()) ? last.getValue() : openSegment();
+
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if(segment != current && segment.pending == 0) {
+                    delete(segment);
+                }
+            }
+
+            compactResults();
+        } catch (IOException | RuntimeException e) {
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+
+            results.close();
+            throw e;
+        }
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "OwO spool");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduler = scheduler;
+        this.scheduler.scheduleWithFixedDelay(this::syncQuietly, builder.syncIntervalNanos, builder.syncIntervalNanos, TimeUnit.NANOSECONDS);
+        drain();
+    }
+
+    /**
+     * Spool a {@code byte[]}
+     * @param data data to upload
+     * @param fileName name of file
+     * @param contentType content type of data, {@link OwO#DEFAULT_CONTENT_TYPE} when null
+     * @return ticket of the upload
+     *
+     * @throws IOException if the data cannot be written to the journal or the spool is closed
+     */
+    public long submit(@NotNull byte[] data, @Nullable String fileName, @Nullable String contentType) throws IOException {
+        return submit(ByteBuffer.wrap(data), fileName, contentType);
+    }
+
+    /**
+     * Spool the remaining bytes of a {@link ByteBuffer}, its position is not changed
+     * @param data data to upload
+     * @param fileName name of file
+     * @param contentType content type of data, {@link OwO#DEFAULT_CONTENT_TYPE} when null
+     * @return ticket of the upload
+     *
+     * @throws IOException if the data cannot be written to the journal or the spool is closed
+     */
+    public long submit(@NotNull ByteBuffer data, @Nullable String fileName, @Nullable String contentType) throws IOException {
+        final ByteBuffer source = data.slice();
+
+        return append(fileName, contentType == null ? OwO.DEFAULT_CONTENT_TYPE : contentType, source.remaining(), (channel, position, crc) -> {
+            for (int offset = 0; offset < source.limit(); offset += BUFFER_SIZE) {
+                ByteBuffer chunk = source.duplicate();
+                chunk.position(offset).limit(Math.min(offset + BUFFER_SIZE, source.limit()));
+
+                crc.update(chunk.duplicate());
+                write(channel, chunk, position + offset);
+            }
+        });
+    }
+
+    /**
+     * Spool a file, which is copied into the journal so it can be changed or deleted afterwards
+     * @param file file to upload
+     * @param contentType content type of {@code file}, guessed from its first bytes and its name when null
+     * @return ticket of the upload
+     *
+     * @throws IOException if {@code file} cannot be read, the journal cannot be written or the spool is closed
+     */
+    public long submit(@NotNull final File file, @Nullable String contentType) throws IOException {
+        final long length = file.length();
+
+        return append(file.getName(), contentType == null ? ContentSniffer.guess(file) : contentType, length, (channel, position, crc) -> {
+            try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+                for (long offset = 0; offset < length; ) {
+                    buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - offset));
+                    if(source.read(buffer) == -1) {
+                        throw new EOFException(file + " was truncated while it was spooled");
+                    }
+
+                    buffer.flip();
+                    crc.update(buffer.array(), 0, buffer.limit());
+                    offset += write(channel, buffer, position + offset);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param ticket ticket of an upload
+     * @return result of the upload, or {@code null} if it is still pending, was forgotten or the ticket is unknown
+     */
+    @Nullable
+    public OwOResult<OwOFile> getResult(long ticket) {
+        lock.lock();
+        try {
+            return completed.get(ticket);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop the result of a completed upload, so it no longer takes up memory or space in the journal
+     * @param ticket ticket of an upload
+     * @return {@code true} if a result was dropped
+     *
+     * @throws IOException if the journal cannot be written or the spool is closed
+     */
+    public boolean forget(long ticket) throws IOException {
+        lock.lock();
+        try {
+            if(closed) {
+                throw new IOException("spool is closed");
+            }
+
+            if(completed.remove(ticket) == null) {
+                return false;
+            }
+
+            writeResult(results, ticket, null);
+            dirty = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param ticket ticket of an upload
+     * @return {@code true} if the upload has not completed yet
+     */
+    public boolean isPending(long ticket) {
+        lock.lock();
+        try {
+            return pending.containsKey(ticket);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return amount of uploads which have not completed yet
+     */
+    public int getPending() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a listener which is notified when an upload completes, on the thread which completed it
+     * @param listener listener to add
+     */
+    public void addListener(@NotNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener listener to remove
+     */
+    public void removeListener(@NotNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Force everything written to the journal to disk now instead of at the next sync interval
+     *
+     * @throws IOException if the journal cannot be forced to disk
+     */
+    public void sync() throws IOException {
+        FileChannel segment;
+        FileChannel results;
+
+        lock.lock();
+        try {
+            if(closed || !dirty) {
+                return;
+            }
+
+            dirty = false;
+            segment = current.channel;
+            results = this.results;
+        } finally {
+            lock.unlock();
+        }
+
+        segment.force(false);
+        results.force(false);
+    }
+
+    /**
+     * Stop uploading and close the journal. Uploads which are still running are sent again when the spool is reopened
+     *
+     * @throws IOException if the journal cannot be forced to disk or closed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if(closed) {
+                return;
+            }
+
+            closed = true;
+
+            // interrupting a sync would close the file channels
+            scheduler.shutdown();
+
+            try {
+                current.channel.force(false);
+                results.force(false);
+            } finally {
+                for (Segment segment : segments.values()) {
+                    segment.channel.close();
+                }
+
+                results.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserve room for a record and write its header while holding the lock, then copy the data without it so other
+     * submits are not held up by a large upload
+     */
+    private long append(@Nullable String fileName, @NotNull String contentType, long length, @NotNull Writer writer) throws IOException {
+        long ticket;
+        Segment segment;
+        long dataOffset;
+        ByteBuffer header;
+
+        lock.lock();
+        try {
+            if(closed) {
+                throw new IOException("spool is closed");
+            }
+
+            if(isFull(current)) {
+                rotate();
+            }
+
+            ticket = nextTicket++;
+            segment = current;
+            header = header(ticket, fileName, contentType, length);
+
+            long start = segment.end;
+            dataOffset = start + header.remaining();
+
+            // the header is in place before any later record, so a record left incomplete can be skipped on recovery
+            write(segment.channel, header.duplicate(), start);
+
+            segment.end = dataOffset + length + 4;
+            segment.writers++;
+            reserved.add(ticket);
+        } finally {
+            lock.unlock();
+        }
+
+        boolean written = false;
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(header);
+            writer.write(segment.channel, dataOffset, crc);
+
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            trailer.putInt((int) crc.getValue()).flip();
+            write(segment.channel, trailer, dataOffset + length);
+            written = true;
+        } finally {
+            publish(ticket, segment, written ? new Entry(ticket, segment, dataOffset, length, fileName, contentType) : null);
+        }
+
+        drain();
+        return ticket;
+    }
+
+    /**
+     * Queue a record once its data has been copied, or release its segment when copying failed
+     */
+    private void publish(long ticket, @NotNull Segment segment, @Nullable Entry entry) throws IOException {
+        lock.lock();
+        try {
+            reserved.remove(ticket);
+            segment.writers--;
+
+            if(entry != null && !closed) {
+                if(segment != current) {
+                    try {
+                        // the segment was forced when it was rotated, which may have been before this record was complete
+                        segment.channel.force(false);
+                    } catch (IOException ignored) {
+                        // like a failed sync, the record can only be lost when the machine crashes
+                    }
+                }
+
+                segment.pending++;
+                dirty = true;
+
+                pending.put(ticket, entry);
+                queue.add(entry);
+            } else if(!closed && segment != current && segment.pending == 0 && segment.writers == 0) {
+                delete(segment);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start a new segment, and take the chance to drop results from the journal which are no longer kept
+     */
+    private void rotate() throws IOException {
+        Segment previous = current;
+        previous.channel.force(false);
+        current = openSegment();
+
+        if(previous.pending == 0 && previous.writers == 0) {
+            delete(previous);
+        }
+
+        try {
+            compactResults();
+        } catch (IOException ignored) {
+            // results are appended to the old journal, which is compacted again at the next rotation
+        }
+    }
+
+    private void drain() {
+        List<Entry> start = new ArrayList<>();
+
+        lock.lock();
+        try {
+            while (!closed && !paused && inFlight < maxConcurrency && !queue.isEmpty()) {
+                start.add(queue.poll());
+                inFlight++;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (final Entry entry : start) {
+            owo.upload(new EntryRequestBody(entry), entry.fileName, false).execute(
+                    file -> complete(entry, OwOResult.success(file)),
+                    throwable -> fail(entry, throwable));
+        }
+    }
+
+    private void fail(@NotNull Entry entry, @NotNull Throwable throwable) {
+        if(!isTransient(throwable)) {
+            complete(entry, OwOResult.<OwOFile>failure(throwable));
+            return;
+        }
+
+        long delay = -1;
+
+        lock.lock();
+        try {
+            inFlight--;
+            queue.addFirst(entry);
+
+            if(!closed && !paused) {
+                paused = true;
+                backoffNanos = backoffNanos == 0 ? minBackoffNanos : Math.min(backoffNanos * 2, maxBackoffNanos);
+                delay = backoffNanos;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if(delay >= 0) {
+            scheduler.schedule(this::resume, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void resume() {
+        lock.lock();
+        try {
+            paused = false;
+        } finally {
+            lock.unlock();
+        }
+
+        drain();
+    }
+
+    private void complete(@NotNull Entry entry, @NotNull OwOResult<OwOFile> result) {
+        lock.lock();
+        try {
+            inFlight--;
+            pending.remove(entry.ticket);
+
+            if(result.isSuccessful()) {
+                backoffNanos = 0;
+            }
+
+            completed.put(entry.ticket, result);
+
+            if(!closed) {
+                writeResult(results, entry.ticket, result);
+                dirty = true;
+
+                if(--entry.segment.pending == 0 && entry.segment.writers == 0 && entry.segment != current) {
+                    delete(entry.segment);
+                }
+            }
+        } catch (IOException ignored) {
+            // without a journaled result the segment is kept, so the upload is sent again after a restart
+        } finally {
+            lock.unlock();
+        }
+
+        for (Listener listener : listeners) {
+            try {
+                listener.onComplete(entry.ticket, result);
+            } catch (RuntimeException ignored) {
+                // a broken listener must not stop the spool
+            }
+        }
+
+        drain();
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException ignored) {
+            lock.lock();
+            try {
+                // retried at the next interval
+                dirty = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A segment without records is never full, a new segment would be named after the same ticket
+     */
+    private boolean isFull(@NotNull Segment segment) {
+        return segment.end > SEGMENT_HEADER_LENGTH && segment.end >= segmentSize;
+    }
+
+    @NotNull
+    private Segment openSegment() throws IOException {
+        File file = new File(directory, String.format("%016x%s", nextTicket, SEGMENT_SUFFIX));
+        Segment segment = new Segment(nextTicket, file);
+
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+        header.putInt(SEGMENT_MAGIC).putInt(VERSION).flip();
+
+        segment.channel.truncate(0);
+        write(segment.channel, header, 0);
+        segment.end = SEGMENT_HEADER_LENGTH;
+
+        segments.put(segment.id, segment);
+        return segment;
+    }
+
+    private void delete(@NotNull Segment segment) throws IOException {
+        segments.remove(segment.id);
+        segment.channel.close();
+
+        if(!segment.file.delete()) {
+            throw new IOException("cannot delete " + segment.file);
+        }
+    }
+
+    /**
+     * Read the records of a segment, queueing those which are not done, skipping those which were never completely
+     * written, and cut off a partially written record at the end
+     */
+    private void recover(@NotNull Segment segment, @NotNull Set<Long> done) throws IOException {
+        long end = 0;
+        long next = 0;
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Channels.newInputStream(segment.channel.position(0))), new CRC32());
+        DataInputStream in = new DataInputStream(checked);
+
+        try {
+            if(in.readInt() == SEGMENT_MAGIC && in.readInt() == VERSION) {
+                end = SEGMENT_HEADER_LENGTH;
+                next = end;
+
+                while (true) {
+                    checked.getChecksum().reset();
+
+                    long ticket = in.readLong();
+                    String fileName = readString(in);
+                    String contentType = readString(in);
+                    long length = in.readLong();
+
+                    if(ticket <= 0 || contentType == null || length < 0 || length > segment.channel.size()) {
+                        break;
+                    }
+
+                    long dataOffset = next + 8 + stringLength(fileName) + stringLength(contentType) + 8;
+                    skipFully(in, length);
+
+                    int expected = (int) checked.getChecksum().getValue();
+                    int actual = in.readInt();
+
+                    next = dataOffset + length + 4;
+                    nextTicket = Math.max(nextTicket, ticket + 1);
+
+                    if(actual != expected) {
+                        // a failed submit, its room was reserved so later records follow it
+                        continue;
+                    }
+
+                    end = next;
+
+                    if(!done.contains(ticket)) {
+                        Entry entry = new Entry(ticket, segment, dataOffset, length, fileName, contentType);
+                        pending.put(ticket, entry);
+                        queue.add(entry);
+                        segment.pending++;
+                    }
+                }
+            }
+        } catch (EOFException ignored) {
+            // partially written record
+        }
+
+        if(end == 0) {
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+            header.putInt(SEGMENT_MAGIC).putInt(VERSION).flip();
+            write(segment.channel, header, 0);
+            end = SEGMENT_HEADER_LENGTH;
+        }
+
+        segment.channel.truncate(end);
+        segment.end = end;
+    }
+
+    /**
+     * Read the journaled results, collecting the tickets of every upload which is done, and cut off a partially written
+     * result at the end
+     */
+    private void recoverResults(@NotNull Set<Long> done) throws IOException {
+        long end = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(results.position(0))));
+
+        try {
+            while (in.readInt() == RESULT_MAGIC) {
+                int length = in.readInt();
+                if(length < 0 || length > results.size()) {
+                    break;
+                }
+
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                if(in.readInt() != crc(payload)) {
+                    break;
+                }
+
+                DataInputStream result = new DataInputStream(new ByteArrayInputStream(payload));
+                long ticket = result.readLong();
+                int kind = result.readByte();
+
+                if(kind == RESULT_SUCCESS) {
+                    OwOFile file = new OwOFile(readString(result), readString(result), readString(result), result.readLong());
+
+                    // results journaled before the upload URL was stored use the upload URL of the OwO
+                    String uploadUrl = result.available() > 0 ? readString(result) : null;
+                    completed.put(ticket, OwOResult.success(file.setFullUrl(uploadUrl == null ? owo.getUploadUrl() : uploadUrl)));
+                } else if(kind == RESULT_FAILURE) {
+                    completed.put(ticket, OwOResult.<OwOFile>failure(new IOException(readString(result))));
+                } else {
+                    completed.remove(ticket);
+                }
+
+                done.add(ticket);
+                nextTicket = Math.max(nextTicket, ticket + 1);
+                end += 12 + length;
+            }
+        } catch (EOFException ignored) {
+            // partially written result
+        }
+
+        results.truncate(end);
+        results.position(end);
+    }
+
+    /**
+     * Rewrite the journaled results so it only holds the results which are kept, and marks for uploads which are done
+     * but still in a segment, so they are not sent again after a restart
+     */
+    private void compactResults() throws IOException {
+        File file = new File(directory, RESULTS_FILE);
+        File temp = new File(directory, RESULTS_TEMP_FILE);
+
+        try (FileChannel channel = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long ticket = segments.isEmpty() ? nextTicket : segments.firstKey(); ticket < nextTicket; ticket++) {
+                if(!pending.containsKey(ticket) && !reserved.contains(ticket) && !completed.containsKey(ticket)) {
+                    writeResult(channel, ticket, null);
+                }
+            }
+
+            for (Map.Entry<Long, OwOResult<OwOFile>> entry : completed.entrySet()) {
+                writeResult(channel, entry.getKey(), entry.getValue());
+            }
+
+            channel.force(false);
+        }
+
+        results.close();
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            results = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            results.position(results.size());
+        }
+    }
+
+    /**
+     * Append a result to a journal, a {@code null} result marks an upload as done without keeping its result
+     */
+    private static void writeResult(@NotNull FileChannel channel, long ticket, @Nullable OwOResult<OwOFile> result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeLong(ticket);
+
+        if(result == null) {
+            out.writeByte(RESULT_FORGOTTEN);
+        } else if(result.isSuccessful()) {
+            OwOFile file = result.getValue();
+            out.writeByte(RESULT_SUCCESS);
+            writeString(out, file.getHash());
+            writeString(out, file.getName());
+            writeString(out, file.getUrl());
+            out.writeLong(file.getSize());
+            writeString(out, file.getUploadUrl());
+        } else {
+            out.writeByte(RESULT_FAILURE);
+            writeString(out, String.valueOf(result.getThrowable()));
+        }
+
+        byte[] payload = bytes.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(12 + payload.length);
+        buffer.putInt(RESULT_MAGIC).putInt(payload.length).put(payload).putInt(crc(payload)).flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @NotNull
+    private static ByteBuffer header(long ticket, @Nullable String fileName, @NotNull String contentType, long length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeLong(ticket);
+        writeString(out, fileName);
+        writeString(out, contentType);
+        out.writeLong(length);
+
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static void writeString(@NotNull DataOutputStream out, @Nullable String value) throws IOException {
+        if(value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > MAX_STRING_LENGTH) {
+            bytes = Arrays.copyOf(bytes, MAX_STRING_LENGTH);
+        }
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(@NotNull DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length == -1) {
+            return null;
+        }
+
+        if(length < 0 || length > MAX_STRING_LENGTH) {
+            throw new EOFException("invalid string length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int stringLength(@Nullable String value) {
+        return 4 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void skipFully(@NotNull DataInputStream in, long length) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        while (length > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if(read == -1) {
+                throw new EOFException();
+            }
+
+            length -= read;
+        }
+    }
+
+    private static int write(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+
+        return written;
+    }
+
+    private static int crc(@NotNull byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        return (int) crc.getValue();
+    }
+
+    private static boolean isTransient(@NotNull Throwable throwable) {
+        if(throwable instanceof HttpException) {
+            int code = ((HttpException) throwable).code();
+            return code == 429 || code >= 500;
+        }
+
+        return throwable instanceof IOException;
+    }
+
+    /**
+     * Listener notified when a spooled upload completes
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called once for every upload, also for uploads completed before a restart when they were still running
+         * @param ticket ticket of the upload
+         * @param result result of the upload
+         */
+        void onComplete(long ticket, @NotNull OwOResult<OwOFile> result);
+    }
+
+    /**
+     * Writes the data of a record at a position of a segment
+     */
+    private interface Writer {
+
+        void write(@NotNull FileChannel channel, long position, @NotNull CRC32 crc) throws IOException;
+    }
+
+    private static class Segment {
+
+        final long id;
+        @NotNull final File file;
+        @NotNull final FileChannel channel;
+
+        long end;
+        int pending;
+        int writers;
+
+        Segment(long id, @NotNull File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    private static class Entry {
+
+        final long ticket;
+        @NotNull final Segment segment;
+        final long offset;
+        final long length;
+        @Nullable final String fileName;
+        @NotNull final String contentType;
+
+        Entry(long ticket, @NotNull Segment segment, long offset, long length, @Nullable String fileName, @NotNull String contentType) {
+            this.ticket = ticket;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.fileName = fileName;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * Body reading the data of an entry straight from its segment, so it can be written more than once
+     */
+    private static class EntryRequestBody extends RequestBody {
+
+        @NotNull private final Entry entry;
+
+        EntryRequestBody(@NotNull Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MediaType.parse(entry.contentType);
+        }
+
+        @Override
+        public long contentLength() {
+            return entry.length;
+        }
+
+        @Override
+        public void writeTo(@NotNull BufferedSink sink) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+            for (long offset = 0; offset < entry.length; ) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, entry.length - offset));
+
+                int read = entry.segment.channel.read(buffer, entry.offset + offset);
+                if(read == -1) {
+                    throw new EOFException("spool segment " + entry.segment.file + " was truncated");
+                }
+
+                buffer.flip();
+                sink.write(buffer);
+                sink.emitCompleteSegments();
+                offset += read;
+            }
+        }
+    }
+
+    public static class Builder {
+
+        @NotNull final OwO owo;
+        @NotNull final File directory;
+
+        long segmentSize = 64L * 1024 * 1024;
+        int maxConcurrency = 4;
+        long syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        long minBackoffNanos = TimeUnit.SECONDS.toNanos(1);
+        long maxBackoffNanos = TimeUnit.MINUTES.toNanos(5);
+        int maxResults = 10000;
+
+        /**
+         * @param owo instance used to upload
+         * @param directory directory of the journal, which is created when it does not exist
+         */
+        public Builder(@NotNull OwO owo, @NotNull File directory) {
+            this.owo = owo;
+            this.directory = directory;
+        }
+
+        /**
+         * Set size after which a new segment is started, defaults to 64 MiB
+         * @param segmentSize size of a segment in bytes
+         * @return instance of builder
+         */
+        public Builder setSegmentSize(long segmentSize) {
+            this.segmentSize = segmentSize;
+
+            return this;
+        }
+
+        /**
+         * Set maximum amount of uploads running at once, defaults to 4
+         * @param maxConcurrency maximum amount of uploads
+         * @return instance of builder
+         */
+        public Builder setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+
+            return this;
+        }
+
+        /**
+         * Set how often the journal is forced to disk, defaults to 100 milliseconds
+         * @param syncInterval interval between syncs
+         * @param unit unit of {@code syncInterval}
+         * @return instance of builder
+         */
+        public Builder setSyncInterval(long syncInterval, @NotNull TimeUnit unit) {
+            this.syncIntervalNanos = unit.toNanos(syncInterval);
+
+            return this;
+        }
+
+        /**
+         * Set how long the spool pauses after a transient failure, doubling from {@code min} up to {@code max}.
+         * Defaults to 1 second up to 5 minutes
+         * @param min first pause
+         * @param max longest pause
+         * @param unit unit of {@code min} and {@code max}
+         * @return instance of builder
+         */
+        public Builder setBackoff(long min, long max, @NotNull TimeUnit unit) {
+            this.minBackoffNanos = unit.toNanos(min);
+            this.maxBackoffNanos = unit.toNanos(max);
+
+            return this;
+        }
+
+        /**
+         * Set how many results are kept to be looked up by ticket, the oldest results are dropped first. Defaults to 10000
+         * @param maxResults maximum amount of results
+         * @return instance of builder
+         */
+        public Builder setMaxResults(int maxResults) {
+            this.maxResults = maxResults;
+
+            return this;
+        }
+
+        /**
+         * Open the spool, uploads which were pending when it was last closed are resumed
+         * @return spool with properties from current builder
+         *
+         * @throws IllegalArgumentException when a setting is invalid
+         * @throws IOException when the journal cannot be opened
+         */
+        public OwOSpool build() throws IOException {
+            if(segmentSize <= 0 || maxConcurrency <= 0 || syncIntervalNanos <= 0) {
+                throw new IllegalArgumentException("segmentSize, maxConcurrency and syncInterval must be positive!");
+            }
+
+            if(minBackoffNanos <= 0 || maxBackoffNanos < minBackoffNanos) {
+                throw new IllegalArgumentException("backoff must satisfy 0 < min <= max!");
+            }
+
+            return new OwOSpool(this);
+        }
+    }
+}
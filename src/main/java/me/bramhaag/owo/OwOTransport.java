@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP transport used by {@link OwO}, holding the connection pool and dispatcher threads.
+ *
+ * A transport can be shared between any amount of {@link OwO} instances, which then reuse each other's connections.
+ * Every instance still adds its own key to the requests it sends. Bulk requests of all instances run on a second
+ * dispatcher, which is capped separately from the dispatcher of regular requests.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OwOTransport {
+
+    @NotNull private final OkHttpClient client;
+    @Nullable private Dispatcher bulkDispatcher;
+
+    /**
+     * Create a transport on top of an existing client, sharing its connection pool, dispatcher and settings
+     * @param client client to use
+     */
+    public OwOTransport(@NotNull OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Get the transport used by every {@link OwO} which has no transport set
+     * @return default transport
+     */
+    @NotNull
+    public static OwOTransport getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * @return client of this transport, without any {@link OwO} specific interceptors
+     */
+    @NotNull
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return dispatcher of this transport
+     */
+    @NotNull
+    public Dispatcher getDispatcher() {
+        return client.dispatcher();
+    }
+
+    /**
+     * Get the dispatcher of bulk requests, which shares the threads of {@link OwOTransport#getDispatcher()} and is
+     * created with its overall limit as both overall and per host limit
+     * @return dispatcher of bulk requests
+     */
+    @NotNull
+    public synchronized Dispatcher getBulkDispatcher() {
+        if(bulkDispatcher == null) {
+            Dispatcher dispatcher = client.dispatcher();
+
+            bulkDispatcher = new Dispatcher(dispatcher.executorService());
+            bulkDispatcher.setMaxRequests(dispatcher.getMaxRequests());
+            bulkDispatcher.setMaxRequestsPerHost(dispatcher.getMaxRequests());
+        }
+
+        return bulkDispatcher;
+    }
+
+    /**
+     * @return connection pool of this transport
+     */
+    @NotNull
+    public ConnectionPool getConnectionPool() {
+        return client.connectionPool();
+    }
+
+    private static class DefaultHolder {
+        @NotNull static final OwOTransport DEFAULT = new Builder().build();
+    }
+
+    public static class Builder {
+
+        int maxIdleConnections = 5;
+        long keepAliveNanos = TimeUnit.MINUTES.toNanos(5);
+
+        int maxRequests = 64;
+        int maxRequestsPerHost = 5;
+
+        boolean http2 = true;
+
+        long connectTimeoutMillis = 10_000;
+        long readTimeoutMillis = 10_000;
+        long writeTimeoutMillis = 10_000;
+
+        /**
+         * Set connection pool size, defaults to 5 idle connections kept alive for 5 minutes
+         * @param maxIdleConnections maximum amount of idle connections to keep
+         * @param keepAlive time an idle connection is kept for
+         * @param unit unit of {@code keepAlive}
+         * @return instance of builder
+         */
+        public Builder setConnectionPool(int maxIdleConnections, long keepAlive, @NotNull TimeUnit unit) {
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveNanos = unit.toNanos(keepAlive);
+
+            return this;
+        }
+
+        /**
+         * Set maximum amount of requests which are executed concurrently, defaults to 64
+         * @param maxRequests maximum amount of concurrent requests
+         * @return instance of builder
+         */
+        public Builder setMaxRequests(int maxRequests) {
+            this.maxRequests = maxRequests;
+
+            return this;
+        }
+
+        /**
+         * Set maximum amount of requests which are executed concurrently for each host, defaults to 5
+         * @param maxRequestsPerHost maximum amount of concurrent requests for each host
+         * @return instance of builder
+         */
+        public Builder setMaxRequestsPerHost(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+
+            return this;
+        }
+
+        /**
+         * Set whether HTTP/2 is preferred over HTTP/1.1 when the server supports it, defaults to true
+         * @param http2 true to prefer HTTP/2
+         * @return instance of builder
+         */
+        public Builder setHttp2(boolean http2) {
+            this.http2 = http2;
+
+            return this;
+        }
+
+        /**
+         * Set connect timeout, defaults to 10 seconds
+         * @param timeout timeout, 0 for no timeout
+         * @param unit unit of {@code timeout}
+         * @return instance of builder
+         */
+        public Builder setConnectTimeout(long timeout, @NotNull TimeUnit unit) {
+            this.connectTimeoutMillis = unit.toMillis(timeout);
+
+            return this;
+        }
+
+        /**
+         * Set read timeout, defaults to 10 seconds
+         * @param timeout timeout, 0 for no timeout
+         * @param unit unit of {@code timeout}
+         * @return instance of builder
+         */
+        public Builder setReadTimeout(long timeout, @NotNull TimeUnit unit) {
+            this.readTimeoutMillis = unit.toMillis(timeout);
+
+            return this;
+        }
+
+        /**
+         * Set write timeout, defaults to 10 seconds
+         * @param timeout timeout, 0 for no timeout
+         * @param unit unit of {@code timeout}
+         * @return instance of builder
+         */
+        public Builder setWriteTimeout(long timeout, @NotNull TimeUnit unit) {
+            this.writeTimeoutMillis = unit.toMillis(timeout);
+
+            return this;
+        }
+
+        /**
+         * Build current builder
+         * @return transport with properties from current builder
+         *
+         * @throws IllegalArgumentException when a limit is not positive
+         */
+        public OwOTransport build() {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(maxRequests);
+            dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+            OkHttpClient client = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveNanos, TimeUnit.NANOSECONDS))
+                    .dispatcher(dispatcher)
+                    .protocols(http2 ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1) : Collections.singletonList(Protocol.HTTP_1_1))
+                    .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .writeTimeout(writeTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .build();
+
+            return new OwOTransport(client);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming decoder of pomf responses, which reads the {@code files} array straight into {@link OwOFile}s
+ * without building a tree of the response first.
+ *
+ * A response with {@code "success": false} is turned into a {@link JsonParseException} with its error code and description.
+ */
+class PomfTypeAdapter extends TypeAdapter<List<OwOFile>> {
+
+    @NotNull private final String uploadUrl;
+
+    /**
+     * @param uploadUrl upload URL used to build the full URL of every file
+     */
+    PomfTypeAdapter(@NotNull String uploadUrl) {
+        this.uploadUrl = uploadUrl;
+    }
+
+    /**
+     * @return adapter which only decodes the first file of a response
+     */
+    @NotNull
+    TypeAdapter<OwOFile> first() {
+        return new TypeAdapter<OwOFile>() {
+            @Override
+            public void write(JsonWriter out, OwOFile file) throws IOException {
+                List<OwOFile> files = new ArrayList<>(1);
+                if(file != null) {
+                    files.add(file);
+                }
+
+                PomfTypeAdapter.this.write(out, file == null ? null : files);
+            }
+
+            @Override
+            public OwOFile read(JsonReader in) throws IOException {
+                List<OwOFile> files = PomfTypeAdapter.this.read(in);
+                if(files == null) {
+                    return null;
+                }
+
+                if(files.isEmpty()) {
+                    throw new JsonParseException("response does not contain any files");
+                }
+
+                return files.get(0);
+            }
+        };
+    }
+
+    @Override
+    public void write(JsonWriter out, List<OwOFile> files) throws IOException {
+        if(files == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject().name("success").value(true).name("files").beginArray();
+
+        for (OwOFile file : files) {
+            out.beginObject()
+                    .name("hash").value(file.getHash())
+                    .name("name").value(file.getName())
+                    .name("url").value(file.getUrl())
+                    .name("size").value(file.getSize())
+                    .endObject();
+        }
+
+        out.endArray().endObject();
+    }
+
+    @Override
+    public List<OwOFile> read(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        boolean success = true;
+        String errorCode = null;
+        String description = null;
+        List<OwOFile> files = null;
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "success":
+                    success = in.nextBoolean();
+                    break;
+                case "errorcode":
+                    errorCode = in.nextString();
+                    break;
+                case "description":
+                    description = in.nextString();
+                    break;
+                case "files":
+                    files = readFiles(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+
+        in.endObject();
+
+        if(!success || files == null) {
+            throw new JsonParseException(String.format("upload failed (%s): %s", errorCode, description));
+        }
+
+        return files;
+    }
+
+    @NotNull
+    private List<OwOFile> readFiles(@NotNull JsonReader in) throws IOException {
+        List<OwOFile> files = new ArrayList<>();
+
+        in.beginArray();
+        while (in.hasNext()) {
+            files.add(readFile(in));
+        }
+        in.endArray();
+
+        return files;
+    }
+
+    @NotNull
+    private OwOFile readFile(@NotNull JsonReader in) throws IOException {
+        String hash = null;
+        String name = null;
+        String url = null;
+        long size = 0;
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String key = in.nextName();
+
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+
+            switch (key) {
+                case "hash":
+                    hash = in.nextString();
+                    break;
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "url":
+                    url = in.nextString();
+                    break;
+                case "size":
+                    size = in.nextLong();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+
+        in.endObject();
+
+        return new OwOFile(hash, name, url, size).setFullUrl(uploadUrl);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import me.bramhaag.owo.util.OneShotBody;
+import okhttp3.MultipartBody;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers for inspecting requests and responses inside interceptors
+ */
+final class Requests {
+
+    private Requests() {
+    }
+
+    /**
+     * Check whether a request can be sent more than once
+     * @param request request to check
+     * @return false when the body of {@code request} can only be written once
+     */
+    static boolean isReplayable(@NotNull Request request) {
+        RequestBody body = request.body();
+
+        if(body instanceof MultipartBody) {
+            for (MultipartBody.Part part : ((MultipartBody) body).parts()) {
+                if(isOneShot(part.body())) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return !isOneShot(body);
+    }
+
+    private static boolean isOneShot(@Nullable RequestBody body) {
+        return body instanceof OneShotBody;
+    }
+
+    /**
+     * Check whether a response tells the client to slow down
+     * @param response response to check
+     * @return true when the status code is {@code 429 Too Many Requests} or {@code 503 Service Unavailable}
+     */
+    static boolean isThrottled(@NotNull Response response) {
+        return response.code() == 429 || response.code() == 503;
+    }
+
+    /**
+     * Parse the {@code Retry-After} header of a response, which is either an amount of seconds or an HTTP date
+     * @param response response to parse
+     * @return delay in nanoseconds, or -1 when the header is missing or invalid
+     */
+    static long retryAfterNanos(@NotNull Response response) {
+        String value = response.header("Retry-After");
+        if(value == null) {
+            return -1;
+        }
+
+        value = value.trim();
+
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ignored) {
+        }
+
+        try {
+            long millis = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Close a response, ignoring a missing body
+     * @param response response to close, can be null
+     */
+    static void closeQuietly(@Nullable Response response) {
+        if(response != null && response.body() != null) {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fork/join task which walks a directory tree, listing every directory in its own subtask. Regular files are returned
+ * with their size and content type sniffed from their first bytes, so this work is done by the walking threads instead
+ * of the upload threads.
+ * Symbolic links are not followed. Once {@link TreeWalker#cancel()} is called, no more directories or files are read.
+ */
+class TreeWalker extends RecursiveTask<List<TreeWalker.Entry>> {
+
+    private static final long serialVersionUID = 1L;
+
+    @NotNull private final Path directory;
+    @NotNull private final AtomicBoolean canceled;
+
+    /**
+     * @param directory directory to walk
+     */
+    TreeWalker(@NotNull Path directory) {
+        this(directory, new AtomicBoolean());
+    }
+
+    private TreeWalker(@NotNull Path directory, @NotNull AtomicBoolean canceled) {
+        this.directory = directory;
+        this.canceled = canceled;
+    }
+
+    /**
+     * Stop walking, this task and its subtasks return what they found so far
+     */
+    void cancel() {
+        canceled.set(true);
+    }
+
+    @Override
+    protected List<Entry> compute() {
+        List<Entry> entries = new ArrayList<>();
+        List<TreeWalker> subtasks = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if(canceled.get()) {
+                    break;
+                }
+
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    entries.add(new Entry(path, e));
+                    continue;
+                }
+
+                if(attributes.isRegularFile()) {
+                    try {
+                        entries.add(new Entry(path, attributes.size(), ContentSniffer.guess(path.toFile())));
+                    } catch (IOException e) {
+                        entries.add(new Entry(path, e));
+                    }
+                } else if(attributes.isDirectory()) {
+                    TreeWalker subtask = new TreeWalker(path, canceled);
+                    subtask.fork();
+                    subtasks.add(subtask);
+                }
+            }
+        } catch (IOException e) {
+            entries.add(new Entry(directory, e));
+        }
+
+        for (TreeWalker subtask : subtasks) {
+            entries.addAll(subtask.join());
+        }
+
+        Collections.sort(entries, (a, b) -> a.path.compareTo(b.path));
+        return entries;
+    }
+
+    /**
+     * File found while walking, or a path which could not be read
+     */
+    static class Entry {
+
+        @NotNull final Path path;
+        final long size;
+        @Nullable final String contentType;
+        @Nullable final IOException throwable;
+
+        Entry(@NotNull Path path, long size, @NotNull String contentType) {
+            this.path = path;
+            this.size = size;
+            this.contentType = contentType;
+            this.throwable = null;
+        }
+
+        Entry(@NotNull Path path, @NotNull IOException throwable) {
+            this.path = path;
+            this.size = 0;
+            this.contentType = null;
+            this.throwable = throwable;
+        }
+    }
+}
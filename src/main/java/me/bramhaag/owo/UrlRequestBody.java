@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import me.bramhaag.owo.util.OneShotBody;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * {@link RequestBody} which opens a URL once the upload is sent and pipes the remote file into the request.
+ * Only the first bytes are buffered, to guess the content type when none is given.
+ *
+ * The remote file can only be written once and is closed afterwards, so calls using this body cannot be retried.
+ * Closing the body before it is sent makes sure the URL is never opened.
+ */
+class UrlRequestBody extends RequestBody implements Closeable, OneShotBody {
+
+    @NotNull private final URL url;
+    @Nullable private final String contentType;
+    @NotNull private final String userAgent;
+
+    @Nullable private InputStream stream;
+    @Nullable private MediaType mediaType;
+    private long contentLength = -1;
+
+    @Nullable private IOException failure;
+    private boolean consumed;
+    private boolean closed;
+
+    /**
+     * @param url URL of file
+     * @param contentType content type of file, guessed from its first bytes and the path of {@code url} when null
+     * @param userAgent user agent used to retrieve file
+     */
+    UrlRequestBody(@NotNull URL url, @Nullable String contentType, @NotNull String userAgent) {
+        this.url = url;
+        this.contentType = contentType;
+        this.userAgent = userAgent;
+    }
+
+    @Override
+    public MediaType contentType() {
+        try {
+            open();
+        } catch (IOException e) {
+            // the failure is thrown again by contentLength and writeTo, which are called before anything is sent
+            return MediaType.parse(contentType == null ? OwO.DEFAULT_CONTENT_TYPE : contentType);
+        }
+
+        return mediaType;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        open();
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        InputStream source;
+
+        synchronized (this) {
+            open();
+
+            if(consumed) {
+                throw new IOException("url has already been consumed");
+            }
+
+            consumed = true;
+            source = stream;
+        }
+
+        try (Source in = Okio.source(source)) {
+            sink.writeAll(in);
+        }
+    }
+
+    /**
+     * Close the connection to the URL, or make sure it is never opened when the body has not been sent yet
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+
+        if(stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Open the URL and guess its content type, only the first call does any I/O
+     * @throws IOException when the URL cannot be opened or read, or the body has been closed
+     */
+    private synchronized void open() throws IOException {
+        if(failure != null) {
+            throw failure;
+        }
+
+        if(stream != null) {
+            return;
+        }
+
+        if(closed) {
+            throw new IOException("url upload has been closed");
+        }
+
+        InputStream in = null;
+
+        try {
+            URLConnection connection = url.openConnection();
+            connection.setRequestProperty("User-Agent", userAgent);
+
+            in = new BufferedInputStream(connection.getInputStream());
+            mediaType = MediaType.parse(contentType == null ? ContentSniffer.guess(new File(url.getPath()).getName(), in) : contentType);
+            contentLength = connection.getContentLengthLong();
+            stream = in;
+        } catch (IOException e) {
+            if(in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+
+            failure = e;
+            throw e;
+        }
+    }
+}
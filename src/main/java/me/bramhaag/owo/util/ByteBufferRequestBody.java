@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo.util;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link RequestBody} which writes the remaining bytes of a {@link ByteBuffer} into the request.
+ *
+ * Direct and memory mapped buffers are copied straight into the connection's write buffer in small steps, so no
+ * heap copy of the whole buffer is made. The position of the buffer is not changed, so calls using this body can be retried.
+ * The buffer must not be modified until the call has completed.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ByteBufferRequestBody extends RequestBody {
+
+    /**
+     * Bytes written per step, okio buffers everything passed to a single write before emitting it
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    @Nullable private final MediaType contentType;
+    @NotNull private final ByteBuffer buffer;
+
+    /**
+     * @param contentType content type of the buffer
+     * @param buffer buffer to upload, from its position to its limit
+     */
+    public ByteBufferRequestBody(@Nullable MediaType contentType, @NotNull ByteBuffer buffer) {
+        this.contentType = contentType;
+        this.buffer = buffer.slice();
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        ByteBuffer source = buffer.duplicate();
+
+        for (int position = 0; position < buffer.limit(); position = source.limit()) {
+            source.limit(Math.min(position + CHUNK_SIZE, buffer.limit()));
+            sink.write(source);
+            sink.emitCompleteSegments();
+        }
+    }
+}
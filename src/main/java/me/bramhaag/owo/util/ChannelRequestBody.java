@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo.util;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * {@link RequestBody} which pipes a {@link ReadableByteChannel} into the request through a small heap buffer,
+ * without buffering the content in memory.
+ *
+ * The channel must be in blocking mode. It can only be written once and is closed afterwards, so calls using this body cannot be retried.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ChannelRequestBody extends RequestBody implements OneShotBody {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    @Nullable private final MediaType contentType;
+    private final long contentLength;
+
+    @NotNull private final ReadableByteChannel channel;
+    private boolean consumed;
+
+    /**
+     * @param contentType content type of the channel
+     * @param contentLength amount of bytes in the channel, or {@code -1} when unknown
+     * @param channel channel to upload
+     */
+    public ChannelRequestBody(@Nullable MediaType contentType, long contentLength, @NotNull ReadableByteChannel channel) {
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+        this.channel = channel;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        synchronized (this) {
+            if(consumed) {
+                throw new IOException("channel has already been consumed");
+            }
+
+            consumed = true;
+        }
+
+        try (ReadableByteChannel source = channel) {
+            // a heap buffer, the sink copies it into its segments anyway and direct buffers are only freed by the GC
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    sink.write(buffer);
+                }
+
+                buffer.clear();
+                sink.emitCompleteSegments();
+            }
+        }
+    }
+}
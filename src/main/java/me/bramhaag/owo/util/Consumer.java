@@ -7,13 +7,12 @@ import org.jetbrains.annotations.NotNull;
  * result. Unlike most other functional interfaces, {@code Consumer} is expected
  * to operate via side-effects.
  *
- * This is a Java 7 backport of Java 8's Consumer class.
+ * This was a Java 7 backport of Java 8's Consumer class, it is kept so existing callbacks keep compiling.
  *
  * @param <T> the type of the input to the operation
  *
  */
-
-//Imaginary @FunctionalInterface annotation here :<
+@FunctionalInterface
 public interface Consumer<T> {
 
     /**
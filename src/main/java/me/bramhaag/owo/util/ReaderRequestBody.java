@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo.util;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+
+/**
+ * {@link RequestBody} which pipes a {@link Reader} into the request as UTF-8, through a small buffer.
+ *
+ * The reader can only be written once and is closed afterwards, so calls using this body cannot be retried.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ReaderRequestBody extends RequestBody implements OneShotBody {
+
+    @Nullable private final MediaType contentType;
+    @NotNull private final Reader reader;
+    private boolean consumed;
+
+    /**
+     * @param contentType content type of the text, {@code charset=utf-8} is added when it has no charset
+     * @param reader reader to upload
+     */
+    public ReaderRequestBody(@Nullable MediaType contentType, @NotNull Reader reader) {
+        this.contentType = Utf8.withCharset(contentType);
+        this.reader = reader;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        synchronized (this) {
+            if(consumed) {
+                throw new IOException("reader has already been consumed");
+            }
+
+            consumed = true;
+        }
+
+        try (Reader source = reader) {
+            CharsetEncoder encoder = Utf8.encoder();
+            CharBuffer in = CharBuffer.allocate(Utf8.BUFFER_SIZE / 2);
+            ByteBuffer out = ByteBuffer.allocate(Utf8.BUFFER_SIZE);
+
+            while (source.read(in) != -1) {
+                in.flip();
+                Utf8.write(encoder, in, out, sink, false);
+                in.compact();
+            }
+
+            in.flip();
+            Utf8.write(encoder, in, out, sink, true);
+        }
+    }
+}
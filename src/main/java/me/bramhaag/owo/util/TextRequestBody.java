@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo.util;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * {@link RequestBody} which encodes a {@link CharSequence} as UTF-8 while it is written, through a small buffer
+ * instead of a full encoded copy. The content length is counted without encoding.
+ *
+ * The text must not be modified until the call has completed, calls using this body can be retried.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class TextRequestBody extends RequestBody {
+
+    @Nullable private final MediaType contentType;
+    @NotNull private final CharSequence text;
+
+    private long contentLength = -1;
+
+    /**
+     * @param contentType content type of the text, {@code charset=utf-8} is added when it has no charset
+     * @param text text to upload
+     */
+    public TextRequestBody(@Nullable MediaType contentType, @NotNull CharSequence text) {
+        this.contentType = Utf8.withCharset(contentType);
+        this.text = text;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        if(contentLength == -1) {
+            contentLength = Utf8.size(text);
+        }
+
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        Utf8.write(Utf8.encoder(), CharBuffer.wrap(text), ByteBuffer.allocate(Utf8.BUFFER_SIZE), sink, true);
+    }
+}
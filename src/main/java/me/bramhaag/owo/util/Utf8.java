@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo.util;
+
+import okhttp3.MediaType;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental UTF-8 encoding into a {@link BufferedSink}, through a small buffer instead of a full encoded copy.
+ * Unpaired surrogates are replaced with {@code ?}, like {@link String#getBytes(java.nio.charset.Charset)} does.
+ */
+final class Utf8 {
+
+    static final int BUFFER_SIZE = 8192;
+
+    private Utf8() {
+    }
+
+    /**
+     * Count the amount of bytes {@code text} takes in UTF-8, without encoding it
+     * @param text text to measure
+     * @return size of {@code text} in bytes
+     */
+    static long size(@NotNull CharSequence text) {
+        long size = 0;
+        int length = text.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+
+            if(c < 0x80) {
+                size++;
+            } else if(c < 0x800) {
+                size += 2;
+            } else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else if(Character.isSurrogate(c)) {
+                size++;
+            } else {
+                size += 3;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @param contentType content type of text
+     * @return {@code contentType} with {@code charset=utf-8} added when it has no charset
+     */
+    @Nullable
+    static MediaType withCharset(@Nullable MediaType contentType) {
+        if(contentType == null || contentType.charset() != null) {
+            return contentType;
+        }
+
+        return MediaType.parse(contentType + "; charset=utf-8");
+    }
+
+    /**
+     * @return new UTF-8 encoder which replaces unpaired surrogates
+     */
+    @NotNull
+    static CharsetEncoder encoder() {
+        return StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Encode characters from {@code in} into {@code sink}. Without {@code endOfInput}, a trailing high surrogate is left in {@code in}
+     * @param encoder encoder, which keeps its state between calls
+     * @param in characters to encode
+     * @param out buffer to encode into, which must be empty
+     * @param sink sink to write to
+     * @param endOfInput whether {@code in} holds the last characters
+     *
+     * @throws IOException if {@code sink} cannot be written to
+     */
+    static void write(@NotNull CharsetEncoder encoder, @NotNull CharBuffer in, @NotNull ByteBuffer out, @NotNull BufferedSink sink, boolean endOfInput) throws IOException {
+        CoderResult result;
+        do {
+            result = encoder.encode(in, out, endOfInput);
+            drain(result, out, sink);
+        } while (result.isOverflow());
+
+        if(endOfInput) {
+            do {
+                result = encoder.flush(out);
+                drain(result, out, sink);
+            } while (result.isOverflow());
+        }
+    }
+
+    private static void drain(@NotNull CoderResult result, @NotNull ByteBuffer out, @NotNull BufferedSink sink) throws IOException {
+        if(result.isError()) {
+            result.throwException();
+        }
+
+        out.flip();
+        sink.write(out);
+        sink.emitCompleteSegments();
+        out.clear();
+    }
+}
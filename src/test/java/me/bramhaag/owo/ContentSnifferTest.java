@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ContentSnifferTest {
+
+    @Test
+    public void testSignatures() {
+        assertSniffed("image/png", bytes(0x89, "PNG", 0x0D, 0x0A, 0x1A, 0x0A));
+        assertSniffed("image/jpeg", bytes(0xFF, 0xD8, 0xFF, 0xE0));
+        assertSniffed("image/gif", bytes("GIF89a"));
+        assertSniffed("image/webp", bytes("RIFF", 0, 0, 0, 0, "WEBP"));
+        assertSniffed("video/x-msvideo", bytes("RIFF", 0, 0, 0, 0, "AVI "));
+        assertSniffed("audio/wav", bytes("RIFF", 0, 0, 0, 0, "WAVE"));
+        assertSniffed("image/vnd.microsoft.icon", bytes(0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x10, 0x10));
+        assertSniffed("image/bmp", bytes("BM", 0x36, 0x00, 0x0C, 0x00, 0x00, 0x00, 0x00, 0x00));
+        assertSniffed("video/mpeg", bytes(0x00, 0x00, 0x01, 0xBA));
+        assertSniffed("audio/mpeg", bytes("ID3", 0x04));
+        assertSniffed("audio/mpeg", bytes(0xFF, 0xFB, 0x90));
+        assertSniffed("audio/aac", bytes(0xFF, 0xF1, 0x50));
+        assertSniffed("application/zip", bytes("PK", 0x03, 0x04));
+        assertSniffed("application/gzip", bytes(0x1F, 0x8B, 0x08));
+        assertSniffed("application/pdf", bytes("%PDF-1.7"));
+        assertSniffed("application/wasm", bytes(0x00, "asm", 0x01, 0x00, 0x00, 0x00));
+        assertSniffed("font/ttf", bytes(0x00, 0x01, 0x00, 0x00, 0x00, 0x0F));
+        assertSniffed("text/plain; charset=utf-16le", bytes(0xFF, 0xFE, 'a', 0x00));
+    }
+
+    @Test
+    public void testOffsetSignaturesWinOverFirstByteSignatures() {
+        // a 256 byte ftyp box starts with 00 00 01 00, the icon signature
+        assertSniffed("video/mp4", box(0x100, "ftypisom"));
+        assertSniffed("image/heic", box(0x100, "ftypheic"));
+        assertSniffed("image/avif", box(0x100, "ftypavif"));
+        assertSniffed("video/quicktime", box(0x100, "ftypqt  "));
+        assertSniffed("audio/mp4", box(0x20, "ftypM4A "));
+
+        // a ftyp box of 0x1BA bytes starts like an MPEG program stream
+        assertSniffed("video/mp4", box(0x1BA, "ftypmp42"));
+
+        // a tar whose first entry is named like an ID3 tag
+        byte[] tar = Arrays.copyOf(bytes("ID3.txt"), 512);
+        System.arraycopy(bytes("ustar"), 0, tar, 257, 5);
+        assertSniffed("application/x-tar", tar);
+    }
+
+    @Test
+    public void testTextAndMarkup() {
+        assertSniffed("text/html; charset=utf-8", bytes("  <!DOCTYPE html><html>"));
+        assertSniffed("image/svg+xml", bytes("<?xml version=\"1.0\"?><svg>"));
+        assertSniffed("application/xml", bytes("<?xml version=\"1.0\"?><feed>"));
+        assertSniffed("text/plain; charset=utf-8", "h\u00e9llo".getBytes(StandardCharsets.UTF_8));
+        assertNull(ContentSniffer.sniff(bytes(0x00, 0x13, 0x37), 3));
+        assertNull(ContentSniffer.sniff(new byte[0], 0));
+    }
+
+    @Test
+    public void testTruncatedPrefixDoesNotMatch() {
+        // the second part of the WEBP signature is past the end of the prefix
+        assertNull(ContentSniffer.sniff(bytes("RIFF", 0, 0, 0, 0, "WEBP"), 8));
+    }
+
+    @Test
+    public void testFileNameOnlyRefinesText() {
+        assertEquals("image/png", ContentSniffer.guess("photo.txt", bytes(0x89, "PNG", 0x0D, 0x0A, 0x1A, 0x0A), 8));
+        assertEquals("text/html", ContentSniffer.guess("index.html", bytes("hello"), 5));
+        assertEquals(OwO.DEFAULT_CONTENT_TYPE, ContentSniffer.guess(null, bytes(0x00, 0x13, 0x37), 3));
+    }
+
+    private static void assertSniffed(String expected, byte[] data) {
+        assertEquals(expected, ContentSniffer.sniff(data, data.length));
+    }
+
+    /**
+     * @return start of an ISO base media file, a box of {@code size} bytes holding {@code type}
+     */
+    private static byte[] box(int size, String type) {
+        byte[] data = Arrays.copyOf(bytes(size >>> 24, (size >>> 16) & 0xFF, (size >>> 8) & 0xFF, size & 0xFF, type), 32);
+        data[16] = 0x01;
+        return data;
+    }
+
+    private static byte[] bytes(Object... parts) {
+        StringBuilder builder = new StringBuilder();
+
+        for (Object part : parts) {
+            builder.append(part instanceof Integer ? String.valueOf((char) (int) (Integer) part) : part.toString());
+        }
+
+        return builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.ByteString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ServerSocketFactory;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process fake of the OwO API for tests and the load generator, implementing {@code upload/pomf} and {@code shorten/polr}
+ * as used by {@link OwOService}.
+ *
+ * Uploaded {@code files[]} parts are hashed with SHA-1 and answered with a pomf response, shortened URLs get a random
+ * key below their {@code resultUrl}. Latency, injected failures and request and byte rate caps are configurable.
+ */
+public class FakeOwOServer implements Closeable {
+
+    @NotNull private static final Type FILES = new TypeToken<List<OwOFile>>() {}.getType();
+    @NotNull private static final Pattern FILENAME = Pattern.compile("filename=\"([^\"]*)\"");
+    @NotNull private static final Pattern NAME = Pattern.compile("(?:^|;)\\s*name=\"([^\"]*)\"");
+    @NotNull private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    // MockWebServer logs every request, which would dominate the profile of a load test
+    @NotNull private static final Logger LOGGER = Logger.getLogger(MockWebServer.class.getName());
+
+    static {
+        LOGGER.setLevel(Level.WARNING);
+    }
+
+    @NotNull private final MockWebServer server = new MockWebServer();
+    @NotNull private final Gson gson = OwO.createGson(null);
+
+    @Nullable private final Set<String> keys;
+
+    private final long latencyNanos;
+    private final long jitterNanos;
+
+    private final double serverErrorRate;
+    private final double throttleRate;
+    private final double disconnectRate;
+
+    private final double requestsPerNano;
+    private final double burst;
+    private final double bytesPerNano;
+
+    private double tokens;
+    private long refilled = System.nanoTime();
+    private long linkFree = refilled;
+
+    @NotNull private final LongAdder requests = new LongAdder();
+    @NotNull private final LongAdder uploads = new LongAdder();
+    @NotNull private final LongAdder files = new LongAdder();
+    @NotNull private final LongAdder bytes = new LongAdder();
+    @NotNull private final LongAdder shortens = new LongAdder();
+    @NotNull private final LongAdder injected = new LongAdder();
+    @NotNull private final LongAdder throttled = new LongAdder();
+
+    private FakeOwOServer(@NotNull Builder builder) {
+        this.keys = builder.keys == null ? null : new HashSet<>(builder.keys);
+        this.latencyNanos = builder.latencyNanos;
+        this.jitterNanos = builder.jitterNanos;
+        this.serverErrorRate = builder.serverErrorRate;
+        this.throttleRate = builder.throttleRate;
+        this.disconnectRate = builder.disconnectRate;
+        this.requestsPerNano = builder.requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, builder.requestsPerSecond);
+        this.bytesPerNano = (double) builder.bytesPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = burst;
+
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return FakeOwOServer.this.dispatch(request);
+            }
+        });
+    }
+
+    /**
+     * @return endpoint URL of this server, to be passed to {@link OwO.Builder#setEndpoint(String)}
+     */
+    @NotNull
+    public String getEndpoint() {
+        return server.url("/").toString();
+    }
+
+    /**
+     * @return amount of requests received, including rejected and failed ones
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return amount of successful upload requests
+     */
+    public long getUploads() {
+        return uploads.sum();
+    }
+
+    /**
+     * @return amount of files in successful upload requests
+     */
+    public long getFiles() {
+        return files.sum();
+    }
+
+    /**
+     * @return amount of file bytes in successful upload requests
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return amount of successful shorten requests
+     */
+    public long getShortens() {
+        return shortens.sum();
+    }
+
+    /**
+     * @return amount of injected server errors, throttles and disconnects
+     */
+    public long getInjected() {
+        return injected.sum();
+    }
+
+    /**
+     * @return amount of requests rejected by the request rate cap
+     */
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    @NotNull
+    private MockResponse dispatch(@NotNull RecordedRequest request) throws InterruptedException {
+        requests.increment();
+
+        HttpUrl url = request.getRequestUrl();
+        String key = url.queryParameter("key");
+
+        if(key == null || (keys != null && !keys.contains(key))) {
+            return error(401, "unauthorized");
+        }
+
+        long retryAfter = acquire();
+        if(retryAfter > 0) {
+            throttled.increment();
+            return error(429, "too many requests").setHeader("Retry-After", TimeUnit.NANOSECONDS.toSeconds(retryAfter - 1) + 1);
+        }
+
+        transfer(request.getBodySize());
+        sleep(latencyNanos + (jitterNanos == 0 ? 0 : ThreadLocalRandom.current().nextLong(-jitterNanos, jitterNanos + 1)));
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if(roll < serverErrorRate + throttleRate + disconnectRate) {
+            injected.increment();
+
+            if(roll < serverErrorRate) {
+                return error(500, "injected failure");
+            } else if(roll < serverErrorRate + throttleRate) {
+                return error(429, "injected throttle").setHeader("Retry-After", 1);
+            } else {
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            }
+        }
+
+        String path = url.encodedPath();
+        if("POST".equals(request.getMethod()) && path.endsWith("/upload/pomf")) {
+            return upload(request);
+        } else if("GET".equals(request.getMethod()) && path.endsWith("/shorten/polr")) {
+            return shorten(url);
+        }
+
+        return error(404, "not found");
+    }
+
+    @NotNull
+    private MockResponse upload(@NotNull RecordedRequest request) {
+        String contentType = request.getHeader("Content-Type");
+        int index = contentType == null ? -1 : contentType.indexOf("boundary=");
+
+        if(contentType == null || !contentType.startsWith("multipart/form-data") || index < 0) {
+            return error(400, "expected multipart/form-data");
+        }
+
+        List<OwOFile> result = new ArrayList<>();
+        long size = 0;
+
+        try {
+            Buffer body = request.getBody();
+            ByteString delimiter = ByteString.encodeUtf8("\r\n--" + contentType.substring(index + 9).replace("\"", ""));
+
+            long start = body.indexOf(delimiter.substring(2));
+            if(start < 0) {
+                throw new EOFException("missing boundary");
+            }
+
+            body.skip(start + delimiter.size() - 2);
+
+            while (!body.rangeEquals(0, ByteString.encodeUtf8("--"))) {
+                body.readUtf8LineStrict();
+
+                String disposition = null;
+                for (String line; !(line = body.readUtf8LineStrict()).isEmpty(); ) {
+                    if(line.regionMatches(true, 0, "Content-Disposition:", 0, 20)) {
+                        disposition = line;
+                    }
+                }
+
+                long end = body.indexOf(delimiter);
+                if(end < 0) {
+                    throw new EOFException("missing closing boundary");
+                }
+
+                Buffer content = new Buffer();
+                body.read(content, end);
+                body.skip(delimiter.size());
+
+                Matcher name = disposition == null ? null : NAME.matcher(disposition);
+                if(name == null || !name.find() || !"files[]".equals(name.group(1))) {
+                    continue;
+                }
+
+                Matcher filename = FILENAME.matcher(disposition);
+                String fileName = filename.find() ? filename.group(1) : null;
+                int extension = fileName == null ? -1 : fileName.lastIndexOf('.');
+
+                String url = randomKey(6) + (extension < 0 ? "" : fileName.substring(extension));
+                result.add(new OwOFile(content.sha1().hex(), fileName, url, content.size()));
+                size += content.size();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return error(400, "malformed multipart body");
+        }
+
+        if(result.isEmpty()) {
+            return error(400, "no files[] in request");
+        }
+
+        uploads.increment();
+        files.add(result.size());
+        bytes.add(size);
+
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(gson.toJson(result, FILES));
+    }
+
+    @NotNull
+    private MockResponse shorten(@NotNull HttpUrl url) {
+        String target = url.queryParameter("url");
+        String resultUrl = url.queryParameter("resultUrl");
+
+        if(target == null || target.isEmpty() || !"shorten".equals(url.queryParameter("action"))) {
+            return error(400, "missing url");
+        }
+
+        shortens.increment();
+        return new MockResponse().setBody((resultUrl == null ? "https://awau.moe" : resultUrl) + "/" + randomKey(5));
+    }
+
+    /**
+     * Take a token from the request rate cap
+     * @return 0 when a token was taken, otherwise nanoseconds until a token is available
+     */
+    private synchronized long acquire() {
+        if(requestsPerNano == 0) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilled) * requestsPerNano);
+        refilled = now;
+
+        if(tokens < 1) {
+            return (long) Math.ceil((1 - tokens) / requestsPerNano);
+        }
+
+        tokens -= 1;
+        return 0;
+    }
+
+    /**
+     * Hold the request until its body would have passed through a link capped at the configured byte rate,
+     * which is shared by all connections
+     * @param size size of the request body
+     */
+    private void transfer(long size) throws InterruptedException {
+        if(bytesPerNano == 0 || size <= 0) {
+            return;
+        }
+
+        long done;
+        synchronized (this) {
+            long now = System.nanoTime();
+            linkFree = Math.max(linkFree, now) + (long) (size / bytesPerNano);
+            done = linkFree;
+        }
+
+        sleep(done - System.nanoTime());
+    }
+
+    @NotNull
+    private static MockResponse error(int code, @NotNull String description) {
+        return new MockResponse().setResponseCode(code).setHeader("Content-Type", "application/json")
+                .setBody(String.format("{\"success\":false,\"errorcode\":%d,\"description\":\"%s\"}", code, description));
+    }
+
+    @NotNull
+    private static String randomKey(int length) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] key = new char[length];
+
+        for (int i = 0; i < length; i++) {
+            key[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+
+        return new String(key);
+    }
+
+    private static void sleep(long nanos) throws InterruptedException {
+        if(nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    /**
+     * Creates server sockets which disable Nagle's algorithm on accepted connections. MockWebServer writes the headers
+     * and body of a response separately, which otherwise waits for a delayed ACK and adds about 40 ms to every request
+     */
+    private static class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return createServerSocket(port, 50, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            return createServerSocket(port, backlog, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            ServerSocket socket = createServerSocket();
+            socket.bind(new InetSocketAddress(address, port), backlog);
+            return socket;
+        }
+    }
+
+    public static class Builder {
+
+        @Nullable Collection<String> keys;
+
+        long latencyNanos;
+        long jitterNanos;
+
+        double serverErrorRate;
+        double throttleRate;
+        double disconnectRate;
+
+        double requestsPerSecond;
+        long bytesPerSecond;
+
+        /**
+         * Set accepted API keys, any key is accepted by default
+         * @param keys accepted keys, other keys get {@code 401 Unauthorized}
+         * @return instance of builder
+         */
+        public Builder setKeys(@NotNull Collection<String> keys) {
+            this.keys = keys;
+
+            return this;
+        }
+
+        /**
+         * Set latency added to every request, defaults to none
+         * @param latency mean latency
+         * @param jitter largest deviation from {@code latency}, uniformly distributed
+         * @param unit unit of {@code latency} and {@code jitter}
+         * @return instance of builder
+         */
+        public Builder setLatency(long latency, long jitter, @NotNull TimeUnit unit) {
+            this.latencyNanos = unit.toNanos(latency);
+            this.jitterNanos = unit.toNanos(jitter);
+
+            return this;
+        }
+
+        /**
+         * Set fractions of requests which fail on purpose, defaults to none
+         * @param serverErrorRate fraction answered with {@code 500 Internal Server Error}
+         * @param throttleRate fraction answered with {@code 429 Too Many Requests} and {@code Retry-After: 1}
+         * @param disconnectRate fraction whose connection is closed without a response
+         * @return instance of builder
+         */
+        public Builder setFailures(double serverErrorRate, double throttleRate, double disconnectRate) {
+            this.serverErrorRate = serverErrorRate;
+            this.throttleRate = throttleRate;
+            this.disconnectRate = disconnectRate;
+
+            return this;
+        }
+
+        /**
+         * Cap the request rate, requests above it get {@code 429 Too Many Requests}, defaults to no cap
+         * @param requestsPerSecond amount of requests per second, 0 for no cap
+         * @return instance of builder
+         */
+        public Builder setMaxRequestsPerSecond(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+
+            return this;
+        }
+
+        /**
+         * Cap the rate at which request bodies are received over all connections together, defaults to no cap
+         * @param bytesPerSecond amount of bytes per second, 0 for no cap
+         * @return instance of builder
+         */
+        public Builder setMaxBytesPerSecond(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+
+            return this;
+        }
+
+        /**
+         * Build current builder and start the server on a free local port
+         * @return running server
+         *
+         * @throws IOException when the server cannot be started
+         * @throws IllegalArgumentException when a setting is invalid
+         */
+        public FakeOwOServer start() throws IOException {
+            if(latencyNanos < 0 || jitterNanos < 0 || jitterNanos > latencyNanos) {
+                throw new IllegalArgumentException("latency cannot be negative and jitter cannot exceed latency!");
+            }
+
+            if(serverErrorRate < 0 || throttleRate < 0 || disconnectRate < 0 || serverErrorRate + throttleRate + disconnectRate > 1) {
+                throw new IllegalArgumentException("failure rates must be between 0 and 1 together!");
+            }
+
+            if(requestsPerSecond < 0 || bytesPerSecond < 0) {
+                throw new IllegalArgumentException("rate caps cannot be negative!");
+            }
+
+            FakeOwOServer server = new FakeOwOServer(this);
+            server.server.start();
+            return server;
+        }
+    }
+}
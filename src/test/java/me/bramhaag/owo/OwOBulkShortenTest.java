@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.HttpException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OwOBulkShortenTest {
+
+    private MockWebServer server;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    String url = request.getRequestUrl().queryParameter("url");
+
+                    // later URLs are answered first, so the results have to be put back in order
+                    Thread.sleep(url.length() > 12 ? 10 : 100);
+
+                    if(url.contains("fail")) {
+                        return new MockResponse().setResponseCode(500);
+                    }
+
+                    return new MockResponse().setBody("https://short.test/" + url.substring(url.lastIndexOf('/') + 1));
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testResultsKeepOrderWithPerItemErrors() throws Throwable {
+        OwO owo = new OwO.Builder().setKey("key").setEndpoint(server.url("/").toString()).build();
+
+        List<OwOResult<String>> results = owo.shorten(Arrays.asList("https://a", null, "https://fail", "https://longer/b", "https://a"), 8).executeSync();
+        assertEquals(5, results.size());
+
+        assertEquals("https://short.test/a", results.get(0).getValue());
+        assertTrue(results.get(1).getThrowable() instanceof IllegalArgumentException);
+        assertEquals(500, ((HttpException) results.get(2).getThrowable()).code());
+        assertEquals("https://short.test/b", results.get(3).getValue());
+        assertEquals("https://short.test/a", results.get(4).getValue());
+
+        assertFalse(results.get(2).isSuccessful());
+        assertEquals("every distinct URL is shortened once", 3, server.getRequestCount());
+    }
+
+    @Test
+    public void testWindowDoesNotExceedMaxRequestsOfTransport() throws Throwable {
+        OwOTransport transport = new OwOTransport.Builder().setMaxRequests(2).setMaxRequestsPerHost(1).build();
+        OwO owo = new OwO.Builder().setKey("key").setEndpoint(server.url("/").toString()).setTransport(transport).build();
+
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            urls.add("https://" + i);
+        }
+
+        List<OwOResult<String>> results = owo.shorten(urls, 8).executeAsync().get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < urls.size(); i++) {
+            assertEquals("https://short.test/" + i, results.get(i).getValue());
+        }
+
+        // above the per host limit of the transport, but not above its overall limit
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testBulkDispatcherIsSharedByInstancesOfTransport() throws Throwable {
+        OwOTransport transport = new OwOTransport.Builder().setMaxRequests(2).setMaxRequestsPerHost(1).build();
+        OwO first = new OwO.Builder().setKey("first").setEndpoint(server.url("/").toString()).setTransport(transport).build();
+        OwO second = new OwO.Builder().setKey("second").setEndpoint(server.url("/").toString()).setTransport(transport).build();
+
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            urls.add("https://" + i);
+        }
+
+        CompletableFuture<List<OwOResult<String>>> a = first.shorten(urls, 8).executeAsync();
+        CompletableFuture<List<OwOResult<String>>> b = second.shorten(urls, 8).executeAsync();
+        a.get(10, TimeUnit.SECONDS);
+        b.get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testBulkAndRegularRequestsAreCappedSeparately() throws Throwable {
+        OwOTransport transport = new OwOTransport.Builder().setMaxRequests(2).setMaxRequestsPerHost(1).build();
+        OwO owo = new OwO.Builder().setKey("key").setEndpoint(server.url("/").toString()).setTransport(transport).build();
+
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            urls.add("https://" + i);
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        futures.add(owo.shorten(urls, 8).executeAsync());
+        for (int i = 0; i < 4; i++) {
+            futures.add(owo.shorten("https://r" + i).executeAsync());
+        }
+
+        for (CompletableFuture<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        // the overall limit of the bulk dispatcher plus the per host limit of the regular one
+        assertTrue(maxRunning.get() <= 3);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static me.bramhaag.owo.PomfResponses.uploaded;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OwODedupIndexTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OwODedupIndex index;
+    private OwO owo;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        File file = folder.newFile("dedup.idx");
+        assertTrue(file.delete());
+
+        index = new OwODedupIndex(file);
+        owo = new OwO.Builder().setKey("key").setEndpoint(server.url("/").toString()).setUploadUrl("https://owo.test/").setDedupIndex(index).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void testFileChangedBeforeExecuteIsStoredUnderSentContent() throws Throwable {
+        File file = folder.newFile("changing.txt");
+        write(file, "old");
+
+        OwOAction<OwOFile> action = owo.upload(file);
+        write(file, "new");
+
+        server.enqueue(uploaded("new"));
+        assertEquals("https://owo.test/new", action.executeSync().getFullUrl());
+        assertTrue(new String(server.takeRequest().getBody().readByteArray(), StandardCharsets.UTF_8).contains("new"));
+
+        // the content which was sent is known, the content when the action was created is not
+        assertEquals("https://owo.test/new", owo.upload(text("new")).executeSync().getFullUrl());
+        assertEquals(1, server.getRequestCount());
+
+        server.enqueue(uploaded("old"));
+        assertEquals("https://owo.test/old", owo.upload(text("old")).executeSync().getFullUrl());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testLookupHappensWhenActionRuns() throws Throwable {
+        File file = folder.newFile("late.txt");
+        write(file, "first");
+
+        OwOAction<OwOFile> action = owo.upload(file);
+
+        server.enqueue(uploaded("first"));
+        owo.upload(text("first")).executeSync();
+        assertEquals(1, server.getRequestCount());
+
+        // uploaded after the action was created, but before it ran
+        assertEquals("https://owo.test/first", action.executeAsync().get(5, TimeUnit.SECONDS).getFullUrl());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testEntriesSurviveReopen() throws Exception {
+        File file = newIndexFile();
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            index.put(key(1), new OwOFile("hash", "name.png", "abc.png", 42).setFullUrl("https://mirror.test/"));
+            index.put(key(2), new OwOFile("other", "other.txt", "def.txt", 7));
+        }
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            assertEquals(2, index.size());
+
+            OwOFile first = index.get(key(1));
+            assertEquals("hash", first.getHash());
+            assertEquals("name.png", first.getName());
+            assertEquals("abc.png", first.getUrl());
+            assertEquals(42, first.getSize());
+            assertEquals("https://mirror.test/abc.png", first.getFullUrl());
+
+            // without an upload URL the caller builds the full URL
+            assertNull(index.get(key(2)).getFullUrl());
+            assertNull(index.get(key(3)));
+        }
+    }
+
+    @Test
+    public void testReadsVersion1Index() throws Exception {
+        File file = newIndexFile();
+
+        ByteBuffer record = ByteBuffer.allocate(128);
+        record.put(key(1)).putLong(5);
+        for (String value : new String[] { "hash", "old.txt", "old" }) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            record.putShort((short) bytes.length).put(bytes);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(0x4F574F44);
+            raf.writeInt(1);
+            raf.writeLong(16 + record.position());
+            raf.write(record.array(), 0, record.position());
+        }
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            OwOFile old = index.get(key(1));
+            assertEquals("old", old.getUrl());
+            assertEquals(5, old.getSize());
+            assertNull(old.getFullUrl());
+
+            // records added to an old index keep its layout
+            index.put(key(2), new OwOFile("hash", "new.txt", "new", 3).setFullUrl("https://mirror.test/"));
+        }
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            assertEquals(2, index.size());
+            assertEquals("old", index.get(key(1)).getUrl());
+            assertEquals("new", index.get(key(2)).getUrl());
+        }
+    }
+
+    @Test
+    public void testTableGrows() throws Exception {
+        File file = newIndexFile();
+        int count = 5000;
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            for (int i = 0; i < count; i++) {
+                index.put(key(i), new OwOFile("h", "n", "url" + i, i));
+            }
+
+            assertEquals(count, index.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals("url" + i, index.get(key(i)).getUrl());
+            }
+        }
+    }
+
+    @Test
+    public void testFileGrowsPastInitialMapping() throws Exception {
+        File file = newIndexFile();
+        char[] name = new char[60000];
+        Arrays.fill(name, 'n');
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            for (int i = 0; i < 40; i++) {
+                index.put(key(i), new OwOFile("h", new String(name), "url" + i, i));
+            }
+        }
+
+        assertTrue(file.length() > 1024 * 1024);
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            assertEquals(40, index.size());
+            for (int i = 0; i < 40; i++) {
+                assertEquals("url" + i, index.get(key(i)).getUrl());
+                assertEquals(name.length, index.get(key(i)).getName().length());
+            }
+        }
+    }
+
+    @Test
+    public void testPutReplacesExistingKey() throws Exception {
+        File file = newIndexFile();
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            index.put(key(1), new OwOFile("h", "n", "first", 1));
+            index.put(key(1), new OwOFile("h", "n", "second", 1));
+
+            assertEquals(1, index.size());
+            assertEquals("second", index.get(key(1)).getUrl());
+        }
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            assertEquals(1, index.size());
+            assertEquals("second", index.get(key(1)).getUrl());
+        }
+    }
+
+    @Test
+    public void testCorruptRecordIsRejected() throws Exception {
+        File file = newIndexFile();
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            index.put(key(1), new OwOFile("h", "n", "url", 1));
+        }
+
+        // claim that records continue up to the end of the file
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(8);
+            raf.writeLong(raf.length() - 1);
+        }
+
+        try {
+            new OwODedupIndex(file).close();
+            fail("expected the index to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("is corrupt"));
+        }
+    }
+
+    private File newIndexFile() throws IOException {
+        File file = new File(folder.getRoot(), "store-" + System.nanoTime() + ".idx");
+        assertTrue(!file.exists());
+
+        return file;
+    }
+
+    private static byte[] key(int value) {
+        byte[] key = new byte[OwODedupIndex.KEY_LENGTH];
+        ByteBuffer.wrap(key).putInt(value * 0x9E3779B1).putInt(value);
+
+        return key;
+    }
+
+    private static byte[] text(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void write(File file, String value) throws Exception {
+        Files.write(file.toPath(), text(value));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.HttpException;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static me.bramhaag.owo.PomfResponses.data;
+import static me.bramhaag.owo.PomfResponses.uploaded;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OwOKeyPoolTest {
+
+    private MockWebServer server;
+
+    /**
+     * Keys which are answered with a {@code 429}
+     */
+    private final Set<String> throttled = ConcurrentHashMap.newKeySet();
+
+    private volatile String retryAfter;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if(throttled.contains(request.getRequestUrl().queryParameter("key"))) {
+                    MockResponse response = new MockResponse().setResponseCode(429);
+                    return retryAfter == null ? response : response.setHeader("Retry-After", retryAfter);
+                }
+
+                return uploaded("n", "u", 1);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testThrottledKeyCoolsDownAndRequestUsesOtherKey() throws Throwable {
+        OwOKeyPool pool = new OwOKeyPool.Builder().addKey("first").addKey("second").setCooldown(1, 1, TimeUnit.MINUTES).build();
+        OwO owo = owo(pool);
+        throttled.add("first");
+
+        for (int i = 0; i < 3; i++) {
+            owo.upload(data("data")).executeSync();
+        }
+
+        OwOKeyPool.Key first = pool.getKeys().get(0);
+        OwOKeyPool.Key second = pool.getKeys().get(1);
+
+        // the 429 is sent again with the other key, after which the throttled key is skipped
+        assertTrue(first.isCoolingDown());
+        assertEquals(1, first.getRequests());
+        assertEquals(1, first.getThrottled());
+        assertFalse(second.isCoolingDown());
+        assertEquals(3, second.getRequests());
+        assertEquals(0, second.getThrottled());
+        assertEquals(0, second.getInFlight());
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    public void testKeyIsUsedAgainAfterRetryAfter() throws Throwable {
+        OwOKeyPool pool = new OwOKeyPool.Builder().addKey("first").addKey("second").setCooldown(1, 1, TimeUnit.MINUTES).build();
+        OwO owo = owo(pool);
+        OwOKeyPool.Key first = pool.getKeys().get(0);
+
+        throttled.add("first");
+        retryAfter = "1";
+        owo.upload(data("data")).executeSync();
+        throttled.clear();
+
+        assertTrue(first.isCoolingDown());
+        owo.upload(data("data")).executeSync();
+        assertEquals(1, first.getRequests());
+
+        // Retry-After overrides the one minute cool-down
+        Thread.sleep(1100);
+        assertFalse(first.isCoolingDown());
+
+        owo.upload(data("data")).executeSync();
+        owo.upload(data("data")).executeSync();
+        assertEquals(2, first.getRequests());
+        assertEquals(1, first.getThrottled());
+    }
+
+    @Test
+    public void testResponseIsReturnedWhenEveryKeyIsThrottled() throws Throwable {
+        OwOKeyPool pool = new OwOKeyPool.Builder().addKey("first").addKey("second").setCooldown(1, 1, TimeUnit.MINUTES).build();
+        OwO owo = owo(pool);
+        throttled.add("first");
+        throttled.add("second");
+
+        try {
+            owo.upload(data("data")).executeSync();
+            fail("expected a 429");
+        } catch (HttpException e) {
+            assertEquals(429, e.code());
+        }
+
+        assertEquals(2, server.getRequestCount());
+        assertTrue(pool.getKeys().get(0).isCoolingDown());
+        assertTrue(pool.getKeys().get(1).isCoolingDown());
+    }
+
+    private OwO owo(OwOKeyPool pool) {
+        return new OwO.Builder().setKeyPool(pool).setEndpoint(server.url("/").toString()).build();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static me.bramhaag.owo.PomfResponses.data;
+import static me.bramhaag.owo.PomfResponses.uploaded;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class OwOLoadBalancerTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer failing;
+    private MockWebServer healthy;
+    private OwOLoadBalancer balancer;
+
+    @Before
+    public void setUp() throws Exception {
+        failing = new MockWebServer();
+        failing.start();
+        healthy = new MockWebServer();
+        healthy.start();
+
+        for (int i = 0; i < 10; i++) {
+            failing.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        balancer = new OwOLoadBalancer.Builder()
+                .addEndpoint(new OwOEndpoint(failing.url("/").toString(), "https://failing.test/", null))
+                .addEndpoint(new OwOEndpoint(healthy.url("/").toString(), "https://healthy.test/", null))
+                .setEjection(1, 1, 1, TimeUnit.MINUTES)
+                .setHealthCheck("", 0, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        balancer.close();
+        failing.shutdown();
+        healthy.shutdown();
+    }
+
+    @Test
+    public void testFailsOverAndEjectsFailingEndpoint() throws Throwable {
+        OwO owo = new OwO.Builder().setKey("key").setLoadBalancer(balancer).setUploadUrl("https://owo.test/").build();
+
+        for (int i = 0; i < 4; i++) {
+            healthy.enqueue(uploaded("file" + i));
+
+            OwOFile file = owo.upload(data("file" + i)).executeSync();
+            assertEquals("https://healthy.test/file" + i, file.getFullUrl());
+        }
+
+        // an idle endpoint is the cheapest, so the failing endpoint is tried once and then ejected
+        assertEquals(1, failing.getRequestCount());
+        assertEquals(4, healthy.getRequestCount());
+    }
+
+    @Test
+    public void testDedupHitUsesUploadUrlOfServingEndpoint() throws Throwable {
+        File file = folder.newFile("dedup.idx");
+        assertTrue(file.delete());
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            OwO owo = new OwO.Builder().setKey("key").setLoadBalancer(balancer).setUploadUrl("https://owo.test/").setDedupIndex(index).build();
+            healthy.enqueue(uploaded("same"));
+
+            assertEquals("https://healthy.test/same", owo.upload(data("same")).executeSync().getFullUrl());
+        }
+
+        try (OwODedupIndex index = new OwODedupIndex(file)) {
+            OwO owo = new OwO.Builder().setKey("key").setEndpoint(healthy.url("/").toString()).setUploadUrl("https://owo.test/").setDedupIndex(index).build();
+            int requests = healthy.getRequestCount() + failing.getRequestCount();
+
+            assertEquals("https://healthy.test/same", owo.upload(data("same")).executeSync().getFullUrl());
+            assertEquals(requests, healthy.getRequestCount() + failing.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testSpoolResultUsesUploadUrlOfServingEndpoint() throws Exception {
+        OwO owo = new OwO.Builder().setKey("key").setLoadBalancer(balancer).setUploadUrl("https://owo.test/").build();
+        File directory = folder.newFolder("spool");
+        healthy.enqueue(uploaded("spooled"));
+
+        long ticket;
+        try (OwOSpool spool = new OwOSpool.Builder(owo, directory).build()) {
+            ticket = spool.submit(data("spooled"), null, "text/plain");
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (spool.getResult(ticket) == null && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals("https://healthy.test/spooled", spool.getResult(ticket).getValue().getFullUrl());
+        }
+
+        try (OwOSpool spool = new OwOSpool.Builder(owo, directory).build()) {
+            OwOResult<OwOFile> result = spool.getResult(ticket);
+            assertNotNull(result);
+            assertEquals("https://healthy.test/spooled", result.getValue().getFullUrl());
+        }
+    }
+}
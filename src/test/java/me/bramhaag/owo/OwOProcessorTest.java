@@ -0,0 +1,259 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.Request;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OwOProcessorTest {
+
+    private final List<PendingCall> calls = new ArrayList<>();
+    private final Upstream upstream = new Upstream();
+    private final Downstream downstream = new Downstream();
+
+    @Test
+    public void testDemandNeverExceedsConcurrency() {
+        OwOProcessor<Integer, Integer> processor = processor(3, false);
+        downstream.request = 1;
+        processor.subscribe(downstream);
+        processor.onSubscribe(upstream);
+
+        assertEquals(3, upstream.requested);
+        feed(processor);
+        assertEquals(3, calls.size());
+
+        // one result is taken downstream, which makes room for exactly one more item
+        for (PendingCall call : new ArrayList<>(calls)) {
+            call.succeed();
+        }
+
+        assertEquals(Arrays.asList(0), downstream.values());
+        assertEquals(4, upstream.requested);
+
+        feed(processor);
+        assertEquals(4, calls.size());
+
+        downstream.subscription.request(10);
+        assertEquals(Arrays.asList(0, 1, 2), downstream.values());
+        assertEquals(6, upstream.requested);
+    }
+
+    @Test
+    public void testOrderedEmitsInInputOrder() {
+        OwOProcessor<Integer, Integer> processor = processor(3, true);
+        processor.subscribe(downstream);
+        processor.onSubscribe(upstream);
+        feed(processor);
+
+        calls.get(2).succeed();
+        calls.get(1).fail();
+        assertTrue(downstream.results.isEmpty());
+
+        calls.get(0).succeed();
+        assertEquals(3, downstream.results.size());
+        assertEquals(Integer.valueOf(0), downstream.results.get(0).getValue());
+        assertFalse(downstream.results.get(1).isSuccessful());
+        assertEquals(Integer.valueOf(2), downstream.results.get(2).getValue());
+    }
+
+    @Test
+    public void testUnorderedEmitsAsCompleted() {
+        OwOProcessor<Integer, Integer> processor = processor(3, false);
+        processor.subscribe(downstream);
+        processor.onSubscribe(upstream);
+        feed(processor);
+
+        calls.get(2).succeed();
+        calls.get(0).succeed();
+        calls.get(1).succeed();
+        assertEquals(Arrays.asList(2, 0, 1), downstream.values());
+    }
+
+    @Test
+    public void testCancelCancelsRunningActions() {
+        OwOProcessor<Integer, Integer> processor = processor(3, true);
+        processor.subscribe(downstream);
+        processor.onSubscribe(upstream);
+        feed(processor);
+
+        calls.get(0).succeed();
+        downstream.subscription.cancel();
+
+        assertTrue(upstream.cancelled);
+        assertFalse(calls.get(0).canceled);
+        assertTrue(calls.get(1).canceled);
+        assertTrue(calls.get(2).canceled);
+        assertEquals(Arrays.asList(0), downstream.values());
+        assertFalse(downstream.completed);
+        assertNull(downstream.error);
+    }
+
+    @Test
+    public void testNonPositiveRequestEndsStream() {
+        OwOProcessor<Integer, Integer> processor = processor(3, false);
+        processor.subscribe(downstream);
+        processor.onSubscribe(upstream);
+
+        downstream.subscription.request(0);
+
+        assertTrue(downstream.error instanceof IllegalArgumentException);
+        assertTrue(upstream.cancelled);
+        assertFalse(downstream.completed);
+    }
+
+    private OwOProcessor<Integer, Integer> processor(int concurrency, boolean ordered) {
+        return new OwOProcessor<>(item -> {
+            PendingCall call = new PendingCall(item);
+            calls.add(call);
+            return new OwOAction<>(call);
+        }, concurrency, ordered);
+    }
+
+    /**
+     * Send as many items as upstream was asked for
+     */
+    private void feed(OwOProcessor<Integer, Integer> processor) {
+        while (upstream.sent < upstream.requested) {
+            processor.onNext(upstream.sent++);
+        }
+    }
+
+    private static class Upstream implements Subscription {
+
+        long requested;
+        int sent;
+        boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static class Downstream implements Subscriber<OwOResult<Integer>> {
+
+        final List<OwOResult<Integer>> results = new ArrayList<>();
+        long request = Long.MAX_VALUE;
+
+        Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(request);
+        }
+
+        @Override
+        public void onNext(OwOResult<Integer> result) {
+            results.add(result);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        List<Integer> values() {
+            List<Integer> values = new ArrayList<>();
+            for (OwOResult<Integer> result : results) {
+                values.add(result.getValue());
+            }
+
+            return values;
+        }
+    }
+
+    /**
+     * Call which completes when the test says so
+     */
+    private static class PendingCall implements Call<Integer> {
+
+        private final int value;
+
+        private Callback<Integer> callback;
+        private volatile boolean canceled;
+
+        PendingCall(int value) {
+            this.value = value;
+        }
+
+        void succeed() {
+            callback.onResponse(this, Response.success(value));
+        }
+
+        void fail() {
+            callback.onFailure(this, new IOException("failed"));
+        }
+
+        @Override
+        public Response<Integer> execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enqueue(Callback<Integer> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return callback != null;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call<Integer> clone() {
+            return new PendingCall(value);
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://localhost/").build();
+        }
+    }
+}
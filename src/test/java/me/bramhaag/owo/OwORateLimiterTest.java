@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.HttpException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OwORateLimiterTest {
+
+    private MockWebServer server;
+
+    /**
+     * Shortened URLs in the order the server received them
+     */
+    private final Queue<String> received = new ConcurrentLinkedQueue<>();
+    private final Queue<MockResponse> responses = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String url = request.getRequestUrl().queryParameter("url");
+                received.add(url);
+
+                if(url.equals("blocking")) {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+
+                MockResponse response = responses.poll();
+                return response != null ? response : new MockResponse().setBody("https://short.test/" + url);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    public void testWaitingRequestsAreServedInArrivalOrder() throws Throwable {
+        OwORateLimiter limiter = new OwORateLimiter.Builder().setRate(1000, 1000).setConcurrency(1, 1, 1).build();
+        OwO owo = owo(limiter);
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(shortenInBackground(owo, "blocking"));
+        awaitReceived(1);
+
+        for (int i = 0; i < 5; i++) {
+            threads.add(shortenInBackground(owo, "url" + i));
+            awaitQueued(limiter, i + 1);
+        }
+
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        List<String> expected = new ArrayList<>();
+        expected.add("blocking");
+        for (int i = 0; i < 5; i++) {
+            expected.add("url" + i);
+        }
+
+        assertEquals(expected, new ArrayList<>(received));
+    }
+
+    @Test
+    public void testThrottledResponsesHalveLimit() throws Throwable {
+        OwORateLimiter limiter = new OwORateLimiter.Builder().setRate(1000, 1000).setConcurrency(8, 1, 64)
+                .setRetries(0, 1, TimeUnit.SECONDS).build();
+        OwO owo = owo(limiter);
+
+        responses.add(new MockResponse().setResponseCode(429));
+        expectCode(owo, 429);
+        assertEquals(4, limiter.getLimit());
+
+        responses.add(new MockResponse().setResponseCode(503));
+        expectCode(owo, 503);
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testRetryAfterPausesAndResends() throws Throwable {
+        OwORateLimiter limiter = new OwORateLimiter.Builder().setRate(1000, 1000).build();
+        OwO owo = owo(limiter);
+
+        responses.add(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        long start = System.nanoTime();
+
+        assertEquals("https://short.test/paused", owo.shorten("paused").executeSync());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testRetryAfterBeyondMaximumIsReturned() throws Throwable {
+        OwORateLimiter limiter = new OwORateLimiter.Builder().setRate(1000, 1000).setRetries(3, 1, TimeUnit.SECONDS).build();
+        OwO owo = owo(limiter);
+
+        responses.add(new MockResponse().setResponseCode(429).setHeader("Retry-After", "120"));
+        expectCode(owo, 429);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testCanceledWaiterGivesUpItsPlace() throws Throwable {
+        OwORateLimiter limiter = new OwORateLimiter.Builder().setRate(1000, 1000).setConcurrency(1, 1, 1).build();
+        OwO owo = owo(limiter);
+
+        Thread blocking = shortenInBackground(owo, "blocking");
+        awaitReceived(1);
+
+        CompletableFuture<String> canceled = owo.shorten("canceled").executeAsync();
+        awaitQueued(limiter, 1);
+        Thread behind = shortenInBackground(owo, "behind");
+        awaitQueued(limiter, 2);
+
+        canceled.cancel(true);
+        awaitQueued(limiter, 1);
+
+        release.countDown();
+        blocking.join(5000);
+        behind.join(5000);
+
+        assertEquals(2, server.getRequestCount());
+        assertEquals("behind", new ArrayList<>(received).get(1));
+        assertEquals(0, limiter.getQueued());
+    }
+
+    private OwO owo(OwORateLimiter limiter) {
+        return new OwO.Builder().setKey("key").setEndpoint(server.url("/").toString()).setRateLimiter(limiter).build();
+    }
+
+    private static Thread shortenInBackground(OwO owo, String url) {
+        Thread thread = new Thread(() -> {
+            try {
+                owo.shorten(url).executeSync();
+            } catch (Throwable ignored) {
+                // checked through the requests the server received
+            }
+        });
+
+        thread.start();
+        return thread;
+    }
+
+    private static void expectCode(OwO owo, int code) throws Throwable {
+        try {
+            owo.shorten("throttled").executeSync();
+            fail("expected a " + code);
+        } catch (HttpException e) {
+            assertEquals(code, e.code());
+        }
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(count, received.size());
+    }
+
+    private static void awaitQueued(OwORateLimiter limiter, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.getQueued() != count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(count, limiter.getQueued());
+    }
+}
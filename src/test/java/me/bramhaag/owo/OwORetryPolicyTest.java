@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OwORetryPolicyTest {
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testRetryAfterWithinMaxDelayIsRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "0"));
+        server.enqueue(new MockResponse().setBody("https://awau.moe/a"));
+
+        OwO owo = create(new OwORetryPolicy.Builder().setBackoff(1, 1000, TimeUnit.MILLISECONDS).build());
+
+        assertEquals("https://awau.moe/a", owo.shorten("https://example.com/").getCall().execute().body());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testRetryAfterBeyondMaxDelayIsReturned() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "86400"));
+
+        OwO owo = create(new OwORetryPolicy.Builder().setBackoff(1, 1000, TimeUnit.MILLISECONDS).build());
+
+        long start = System.nanoTime();
+        Response<String> response = owo.shorten("https://example.com/").getCall().execute();
+
+        assertEquals(503, response.code());
+        assertEquals(1, server.getRequestCount());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testCancelStopsWaitingForRetry() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "5"));
+        server.enqueue(new MockResponse().setBody("https://awau.moe/a"));
+
+        OwO owo = create(new OwORetryPolicy.Builder().setBackoff(1, 10_000, TimeUnit.MILLISECONDS).build());
+        Call<String> call = owo.shorten("https://example.com/").getCall();
+
+        final CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        call.enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                failure.complete(null);
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                failure.complete(t);
+            }
+        });
+
+        server.takeRequest();
+        Thread.sleep(100);
+        call.cancel();
+
+        assertTrue(failure.get(1, TimeUnit.SECONDS) != null);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testHedgeDelayFollowsRecentLatencies() {
+        OwORetryPolicy policy = new OwORetryPolicy.Builder().setHedging(0.95, 1, TimeUnit.NANOSECONDS).build();
+
+        for (int i = 0; i < 1000; i++) {
+            policy.recordLatency(TimeUnit.SECONDS.toNanos(1));
+        }
+
+        for (int i = 0; i < 256; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), policy.hedgeDelayNanos());
+    }
+
+    @Test
+    public void testThrottledResponsesAreSentAgainByOneLayer() throws Exception {
+        MockWebServer mirror = new MockWebServer();
+        mirror.start();
+
+        for (int i = 0; i < 50; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+            mirror.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        OwORetryPolicy policy = new OwORetryPolicy.Builder().setMaxAttempts(3).setBackoff(1, 1, TimeUnit.MILLISECONDS).build();
+        OwORateLimiter limiter = new OwORateLimiter.Builder().setRetries(3, 1, TimeUnit.SECONDS).build();
+
+        try (OwOLoadBalancer balancer = new OwOLoadBalancer.Builder()
+                .addEndpoint(new OwOEndpoint(server.url("/").toString(), "https://a.test/", null))
+                .addEndpoint(new OwOEndpoint(mirror.url("/").toString(), "https://b.test/", null))
+                .setHealthCheck("", 0, TimeUnit.SECONDS)
+                .build()) {
+            OwO owo = new OwO.Builder().setKey("key").setRetryPolicy(policy).setRateLimiter(limiter).setLoadBalancer(balancer).build();
+
+            assertEquals(503, owo.shorten("https://example.com/").getCall().execute().code());
+
+            // only the limiter sends the 503 again, and its retries are paid from the budget
+            assertEquals(4, server.getRequestCount() + mirror.getRequestCount());
+            assertEquals(7, policy.getBudget(), 0.001);
+        } finally {
+            mirror.shutdown();
+        }
+    }
+
+    @Test
+    public void testBudgetBoundsInnerRetries() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        OwORetryPolicy policy = new OwORetryPolicy.Builder().setBudget(0.1, 1).build();
+        OwORateLimiter limiter = new OwORateLimiter.Builder().setRetries(5, 1, TimeUnit.SECONDS).build();
+        OwO owo = new OwO.Builder().setKey("key").setEndpoint(server.url("/").toString())
+                .setRetryPolicy(policy).setRateLimiter(limiter).build();
+
+        assertEquals(503, owo.shorten("https://example.com/").getCall().execute().code());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    private OwO create(OwORetryPolicy policy) {
+        return new OwO.Builder().setKey("key").setEndpoint(server.url("/").toString()).setRetryPolicy(policy).build();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OwOShortenCacheTest {
+
+    private MockWebServer server;
+    private OwOShortenCache cache;
+    private OwO owo;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        cache = new OwOShortenCache(16, 1, TimeUnit.MINUTES);
+        owo = new OwO.Builder().setKey("key").setEndpoint(server.url("/").toString()).setShortenCache(cache).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneRequest() throws Exception {
+        server.enqueue(new MockResponse().setBody("https://awau.moe/a").setHeadersDelay(200, TimeUnit.MILLISECONDS));
+
+        CompletableFuture<String> first = enqueue(owo.shorten("https://example.com/").getCall());
+        CompletableFuture<String> second = enqueue(owo.shorten("https://example.com/").getCall());
+
+        assertEquals("https://awau.moe/a", first.get(5, TimeUnit.SECONDS));
+        assertEquals("https://awau.moe/a", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testCanceledOwnerHandsRequestToWaiter() throws Exception {
+        server.enqueue(new MockResponse().setBody("https://awau.moe/a").setHeadersDelay(1, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody("https://awau.moe/b"));
+
+        Call<String> owner = owo.shorten("https://example.com/").getCall();
+        CompletableFuture<String> first = enqueue(owner);
+        server.takeRequest();
+
+        CompletableFuture<String> second = enqueue(owo.shorten("https://example.com/").getCall());
+        owner.cancel();
+
+        assertEquals("https://awau.moe/b", second.get(5, TimeUnit.SECONDS));
+        assertEquals(2, server.getRequestCount());
+
+        try {
+            first.get(5, TimeUnit.SECONDS);
+            fail("canceled owner must fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testCanceledWaiterIsReleased() throws Exception {
+        server.enqueue(new MockResponse().setBody("https://awau.moe/a").setHeadersDelay(1, TimeUnit.SECONDS));
+
+        CompletableFuture<String> owner = enqueue(owo.shorten("https://example.com/").getCall());
+        server.takeRequest();
+
+        final Call<String> waiter = owo.shorten("https://example.com/").getCall();
+        final CompletableFuture<Throwable> failure = new CompletableFuture<>();
+
+        Thread thread = new Thread(() -> {
+            try {
+                waiter.execute();
+                failure.complete(null);
+            } catch (Throwable t) {
+                failure.complete(t);
+            }
+        });
+        thread.start();
+
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        waiter.cancel();
+
+        assertTrue(failure.get(500, TimeUnit.MILLISECONDS) instanceof IOException);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertEquals("https://awau.moe/a", owner.get(5, TimeUnit.SECONDS));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private static CompletableFuture<String> enqueue(Call<String> call) {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+
+        call.enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                future.complete(response.body());
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+
+        return future;
+    }
+}
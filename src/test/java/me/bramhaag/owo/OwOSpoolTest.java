@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static me.bramhaag.owo.PomfResponses.data;
+import static me.bramhaag.owo.PomfResponses.uploaded;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OwOSpoolTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OwO owo;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        owo = new OwO.Builder().setKey("key").setEndpoint(server.url("/").toString()).setUploadUrl("https://owo.test/").build();
+        directory = folder.newFolder("spool");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testResultsAndPendingUploadsSurviveRestart() throws Exception {
+        server.enqueue(uploaded("a"));
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        long first;
+        long second;
+
+        try (OwOSpool spool = new OwOSpool.Builder(owo, directory).setBackoff(1, 1, TimeUnit.MINUTES).build()) {
+            first = spool.submit(data("a"), "a.txt", "text/plain");
+            assertTrue(await(spool, first).isSuccessful());
+
+            second = spool.submit(data("b"), "b.txt", "text/plain");
+            server.takeRequest();
+            server.takeRequest();
+        }
+
+        server.enqueue(uploaded("b"));
+
+        try (OwOSpool spool = new OwOSpool.Builder(owo, directory).build()) {
+            OwOResult<OwOFile> recovered = spool.getResult(first);
+            assertNotNull(recovered);
+            assertEquals("https://owo.test/a", recovered.getValue().getFullUrl());
+
+            OwOResult<OwOFile> resumed = await(spool, second);
+            assertTrue(resumed.isSuccessful());
+            assertEquals("https://owo.test/b", resumed.getValue().getFullUrl());
+
+            assertTrue(new String(server.takeRequest().getBody().readByteArray(), StandardCharsets.UTF_8).contains("b.txt"));
+            assertEquals(3, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testResultsAreBoundedAndCanBeForgotten() throws Exception {
+        long[] tickets = new long[3];
+
+        try (OwOSpool spool = new OwOSpool.Builder(owo, directory).setMaxResults(2).build()) {
+            for (int i = 0; i < tickets.length; i++) {
+                server.enqueue(uploaded("file" + i));
+                tickets[i] = spool.submit(data("file" + i), null, "text/plain");
+                await(spool, tickets[i]);
+            }
+
+            assertNull(spool.getResult(tickets[0]));
+            assertNotNull(spool.getResult(tickets[1]));
+            assertNotNull(spool.getResult(tickets[2]));
+
+            assertTrue(spool.forget(tickets[2]));
+            assertFalse(spool.forget(tickets[2]));
+            assertNull(spool.getResult(tickets[2]));
+        }
+
+        server.enqueue(uploaded("file3"));
+
+        try (OwOSpool spool = new OwOSpool.Builder(owo, directory).setMaxResults(2).build()) {
+            assertNull(spool.getResult(tickets[0]));
+            assertNotNull(spool.getResult(tickets[1]));
+            assertNull(spool.getResult(tickets[2]));
+
+            // completed uploads are not sent again and their tickets are not handed out again
+            long ticket = spool.submit(data("file3"), null, "text/plain");
+            assertTrue(ticket > tickets[2]);
+            assertTrue(await(spool, ticket).isSuccessful());
+            assertEquals(4, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testJournalIsCompactedOnRestart() throws Exception {
+        try (OwOSpool spool = new OwOSpool.Builder(owo, directory).setSegmentSize(1).setMaxResults(1).build()) {
+            for (int i = 0; i < 50; i++) {
+                server.enqueue(uploaded("file" + i));
+                await(spool, spool.submit(data("file" + i), null, "text/plain"));
+            }
+        }
+
+        new OwOSpool.Builder(owo, directory).setMaxResults(1).build().close();
+
+        // one kept result and the mark of the upload in the last segment
+        assertTrue(new File(directory, "results.log").length() < 200);
+        assertEquals(50, server.getRequestCount());
+    }
+
+    private static OwOResult<OwOFile> await(OwOSpool spool, long ticket) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (System.nanoTime() < deadline) {
+            OwOResult<OwOFile> result = spool.getResult(ticket);
+            if(result != null) {
+                return result;
+            }
+
+            Thread.sleep(10);
+        }
+
+        throw new IOException("upload " + ticket + " did not complete");
+    }
+}
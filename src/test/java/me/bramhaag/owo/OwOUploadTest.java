@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import retrofit2.HttpException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static me.bramhaag.owo.PomfResponses.uploaded;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OwOUploadTest {
+
+    private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0x0d, 'I', 'H', 'D', 'R' };
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OwO owo;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        owo = new OwO.Builder().setKey("key").setEndpoint(server.url("/").toString()).setUploadUrl("https://owo.test/").build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testUploadFileLargerThanHeap() throws Throwable {
+        long size = Runtime.getRuntime().maxMemory() * 2;
+        server.setBodyLimit(0);
+
+        File file = folder.newFile("large.bin");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+        }
+
+        server.enqueue(uploaded("large.bin", "abc.bin", size));
+
+        OwOFile uploaded = owo.upload(file).executeSync();
+        assertEquals("https://owo.test/abc.bin", uploaded.getFullUrl());
+        assertEquals(size, uploaded.getSize());
+
+        RecordedRequest request = server.takeRequest();
+        assertTrue(request.getPath().startsWith("/upload/pomf"));
+        assertTrue("multipart body must contain the whole file", request.getBodySize() > size);
+    }
+
+    @Test
+    public void testUploadUrlOpensSourceWhenExecuted() throws Throwable {
+        MockWebServer source = new MockWebServer();
+        source.enqueue(new MockResponse().setBody(new Buffer().write(PNG)));
+        source.start();
+
+        try {
+            OwOAction<OwOFile> action = owo.upload(source.url("/image").url());
+            assertEquals("source must not be opened before the action is executed", 0, source.getRequestCount());
+
+            server.enqueue(uploaded("image", "abc.png", PNG.length));
+            assertEquals("https://owo.test/abc.png", action.executeSync().getFullUrl());
+            assertEquals(1, source.getRequestCount());
+
+            String body = server.takeRequest().getBody().readUtf8();
+            assertTrue(body.contains("Content-Type: image/png"));
+            assertTrue(body.contains("Content-Length: " + PNG.length));
+        } finally {
+            source.shutdown();
+        }
+    }
+
+    @Test
+    public void testUploadUrlCanceledBeforeExecuteNeverOpensSource() throws Throwable {
+        MockWebServer source = new MockWebServer();
+        source.start();
+
+        try {
+            OwOAction<OwOFile> action = owo.upload(source.url("/image").url());
+            action.getCall().cancel();
+
+            try {
+                action.executeSync();
+            } catch (IOException expected) {
+            }
+
+            assertNull(source.takeRequest(100, TimeUnit.MILLISECONDS));
+            assertEquals(0, server.getRequestCount());
+        } finally {
+            source.shutdown();
+        }
+    }
+
+    @Test
+    public void testUploadChannel() throws Throwable {
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+
+        server.enqueue(uploaded("data.txt", "abc.txt", data.length));
+        owo.upload(Channels.newChannel(new ByteArrayInputStream(data)), "data.txt", "text/plain").executeSync();
+
+        String body = server.takeRequest().getBody().readUtf8();
+        assertTrue(body.contains(new String(data, StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void testReaderUploadIsNotRetried() throws Throwable {
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "0"));
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "0"));
+
+        OwO retrying = new OwO.Builder()
+                .setKey("key")
+                .setEndpoint(server.url("/").toString())
+                .setRetryPolicy(new OwORetryPolicy.Builder().setRetryNonIdempotent(true).build())
+                .setRateLimiter(new OwORateLimiter.Builder().build())
+                .build();
+
+        try {
+            retrying.upload(new StringReader("log line"), "log.txt", null).executeSync();
+            fail("503 must be passed to the caller");
+        } catch (HttpException e) {
+            assertEquals(503, e.code());
+        }
+
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testContentTypes() throws Throwable {
+        File file = folder.newFile("image");
+        Files.write(file.toPath(), PNG);
+
+        server.enqueue(uploaded("image", "abc.png", 1));
+        server.enqueue(uploaded("image", "abc", 1));
+
+        owo.upload(file).executeSync();
+        assertTrue("files are sniffed", server.takeRequest().getBody().readUtf8().contains("Content-Type: image/png"));
+
+        owo.upload(PNG, "image").executeSync();
+        assertTrue("byte[] keeps the default", server.takeRequest().getBody().readUtf8().contains("Content-Type: " + OwO.DEFAULT_CONTENT_TYPE));
+    }
+}
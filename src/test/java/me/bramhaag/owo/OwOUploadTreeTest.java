@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OwOUploadTreeTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeOwOServer server;
+    private OwO owo;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdownNow();
+
+        if(server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testManifestCoversEveryFile() throws Exception {
+        start(0);
+
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("a.txt"));
+        write(root.resolve("sub/b.txt"));
+        write(root.resolve("sub/deeper/c.txt"));
+
+        Map<Path, OwOResult<OwOFile>> manifest = owo.uploadTree(root, 2, 1024, pool).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, manifest.size());
+        assertUploaded("a.txt", manifest.get(root.resolve("a.txt")));
+        assertUploaded("b.txt", manifest.get(root.resolve("sub/b.txt")));
+        assertUploaded("c.txt", manifest.get(root.resolve("sub/deeper/c.txt")));
+        assertEquals("small files are sent in one request", 1, server.getRequests());
+    }
+
+    @Test
+    public void testCancelStopsUploads() throws Exception {
+        start(500);
+
+        Path root = folder.getRoot().toPath();
+        for (int i = 0; i < 25; i++) {
+            write(root.resolve("file" + i + ".txt"));
+        }
+
+        CompletableFuture<Map<Path, OwOResult<OwOFile>>> future = owo.uploadTree(root, 1, Long.MAX_VALUE, pool);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (server.getRequests() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertTrue(future.cancel(true));
+
+        Thread.sleep(1500);
+        assertEquals("no batch is started after cancelling", 1, server.getRequests());
+    }
+
+    @Test
+    public void testCancelBeforeWalkFinishesStartsNoBatch() throws Exception {
+        start(0);
+
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("a.txt"));
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        CountDownLatch walking = new CountDownLatch(1);
+        single.execute(() -> {
+            try {
+                walking.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try {
+            CompletableFuture<Map<Path, OwOResult<OwOFile>>> future = owo.uploadTree(root, 1, Long.MAX_VALUE, single);
+            assertTrue(future.cancel(true));
+            walking.countDown();
+
+            single.awaitQuiescence(5, TimeUnit.SECONDS);
+            Thread.sleep(200);
+            assertEquals("no batch is started after cancelling", 0, server.getRequests());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    private void start(long latencyMillis) throws Exception {
+        server = new FakeOwOServer.Builder().setLatency(latencyMillis, 0, TimeUnit.MILLISECONDS).start();
+        owo = new OwO.Builder().setKey("key").setEndpoint(server.getEndpoint()).setUploadUrl("https://owo.test/").build();
+    }
+
+    private static void assertUploaded(String name, OwOResult<OwOFile> result) {
+        OwOFile file = result.getValue();
+
+        assertEquals(name, file.getName());
+        assertTrue(file.getFullUrl().startsWith("https://owo.test/") && file.getFullUrl().endsWith(".txt"));
+    }
+
+    private static void write(Path path) throws Exception {
+        Files.createDirectories(path.getParent());
+        Files.write(path, path.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
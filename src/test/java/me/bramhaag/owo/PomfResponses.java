@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Bram "bramhaag" Hagens
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package me.bramhaag.owo;
+
+import okhttp3.mockwebserver.MockResponse;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Responses of a pomf compatible upload endpoint, shared by the tests
+ */
+final class PomfResponses {
+
+    private PomfResponses() {
+    }
+
+    /**
+     * @param names names of the uploaded files, which are also their URLs
+     * @return successful upload of one byte files
+     */
+    static MockResponse uploaded(String... names) {
+        StringBuilder files = new StringBuilder();
+
+        for (String name : names) {
+            files.append(files.length() == 0 ? "" : ",").append(file(name, name, 1));
+        }
+
+        return new MockResponse().setBody("{\"success\":true,\"files\":[" + files + "]}");
+    }
+
+    /**
+     * @param name name of the uploaded file
+     * @param url URL of the uploaded file, relative to the upload URL
+     * @param size size of the uploaded file
+     * @return successful upload of one file
+     */
+    static MockResponse uploaded(String name, String url, long size) {
+        return new MockResponse().setBody("{\"success\":true,\"files\":[" + file(name, url, size) + "]}");
+    }
+
+    /**
+     * @return UTF-8 bytes of {@code value}
+     */
+    static byte[] data(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String file(String name, String url, long size) {
+        return "{\"hash\":\"h\",\"name\":\"" + name + "\",\"url\":\"" + url + "\",\"size\":" + size + "}";
+    }
+}